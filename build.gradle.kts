@@ -3,6 +3,7 @@ plugins {
     id("application")
     id("org.openjfx.javafxplugin") version "0.1.0"
     id("idea")
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "com.github.kjetilv"
@@ -22,15 +23,56 @@ java {
     targetCompatibility = JavaVersion.VERSION_25
 }
 
+// Incubating Vector API, used by the SIMD gravity kernel when present at runtime
+val vectorModule = "jdk.incubator.vector"
+
 application {
     mainClass.set("com.github.kjetilv.gravitypie2.Main")
     applicationDefaultJvmArgs = listOf(
-        "--enable-native-access=javafx.graphics"
+        "--enable-native-access=javafx.graphics",
+        "--add-modules=$vectorModule"
     )
 }
 
+// Runs the simulation without a display, e.g. ./gradlew headless --args="--count 10000 --steps 200"
+tasks.register<JavaExec>("headless") {
+    group = "application"
+    description = "Runs the simulation engine without a display and reports steps per second."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.github.kjetilv.gravitypie2.Headless")
+    jvmArgs("--add-modules=$vectorModule")
+}
+
+// Runs many headless simulations over the knobs, e.g. ./gradlew sweep --args="--mode grid --levels 4 --out sweep.csv"
+tasks.register<JavaExec>("sweep") {
+    group = "application"
+    description = "Runs a sweep of knob settings and writes a summary of each run to a CSV file."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.github.kjetilv.gravitypie2.Sweep")
+    jvmArgs("--add-modules=$vectorModule")
+}
+
+// Compares the gravity solvers against the direct sum, e.g. ./gradlew accuracy --args="--count 20000"
+tasks.register<JavaExec>("accuracy") {
+    group = "application"
+    description = "Reports the pull and trajectory errors of each gravity solver against the direct sum."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.github.kjetilv.gravitypie2.GravityAccuracy")
+    jvmArgs("--add-modules=$vectorModule")
+}
+
+// Runs the simulation in worker processes, e.g. ./gradlew cluster --args="--workers 4 --count 2000 --compare"
+tasks.register<JavaExec>("cluster") {
+    group = "application"
+    description = "Runs the simulation split over worker processes, optionally comparing with a single process."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.github.kjetilv.gravitypie2.Cluster")
+    jvmArgs("--add-modules=$vectorModule")
+}
+
 tasks.withType<JavaCompile> {
     options.encoding = "UTF-8"
+    options.compilerArgs.addAll(listOf("--add-modules", vectorModule))
 }
 
 val javafxVersion = "25"
@@ -80,8 +122,18 @@ tasks.register("downloadJavafxSources") {
     }
 }
 
+// JMH benchmarks in src/jmh, e.g. ./gradlew jmh -Pjmh.includes=StepBenchmark
+jmh {
+    jmhVersion.set("1.37")
+    profilers.set(listOf("gc"))
+    jvmArgsAppend.add("--add-modules=$vectorModule")
+    resultFormat.set("CSV")
+    (findProperty("jmh.includes") as String?)?.let { includes.set(listOf(it)) }
+}
+
 tasks.test {
     useJUnitPlatform()
+    jvmArgs("--add-modules=$vectorModule")
 }
 
 idea {
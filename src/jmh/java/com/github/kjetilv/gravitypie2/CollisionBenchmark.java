@@ -0,0 +1,59 @@
+package com.github.kjetilv.gravitypie2;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Engine#collide()}, with and without the broad phase. Resolving the collisions pushes the bodies apart and
+ * accumulates impulses, so each iteration starts from a freshly scattered engine and times a batch of
+ * {@link #BATCH} collision passes over it, which keeps the work per iteration the same. The score is the time per
+ * batch.
+ * <p>
+ * Without the broad phase every pair is tested, so the counts stop short of 100000, where a batch takes minutes.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = CollisionBenchmark.BATCH)
+@Measurement(iterations = 5, batchSize = CollisionBenchmark.BATCH)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CollisionBenchmark {
+
+    @Param({"300", "1000", "10000"})
+    public int count;
+
+    @Param({"1", "4"})
+    public int preset;
+
+    @Param({"true", "false"})
+    public boolean broadPhase;
+
+    private Engine engine;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        engine = new Engine(
+            new World(1920, 1080, 1920),
+            Engine.res(count),
+            new Engine.Settings(Gravity.Solver.DIRECT, 0.5d, broadPhase, 1)
+        );
+        engine.scatter(SEED);
+        engine.apply(Preset.get(preset));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public double collide() {
+        engine.collide();
+        return engine.bodies().ix[0];
+    }
+
+    static final int BATCH = 10;
+
+    private static final long SEED = 1L;
+}
@@ -0,0 +1,54 @@
+package com.github.kjetilv.gravitypie2;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+
+/**
+ * A scattered engine, sized and tuned by the benchmark parameters.
+ */
+@State(Scope.Benchmark)
+public class EngineState {
+
+    @Param({"300", "1000", "10000", "100000"})
+    public int count;
+
+    @Param({"1", "4"})
+    public int preset;
+
+    @Param({"barnes-hut", "simd", "simd-float", "simd-mixed", "direct"})
+    public String gravity;
+
+    @Param({"true"})
+    public boolean broadPhase;
+
+    @Param({"1"})
+    public int threads;
+
+    Engine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Gravity.Solver solver = Gravity.Solver.valueOf(gravity.toUpperCase(Locale.ROOT).replace('-', '_'));
+        engine = new Engine(
+            new World(WIDTH, HEIGHT, WIDTH),
+            Engine.res(count),
+            new Engine.Settings(solver, THETA, broadPhase, threads)
+        );
+        engine.scatter(SEED);
+        engine.apply(Preset.get(preset));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    private static final int WIDTH = 1920;
+
+    private static final int HEIGHT = 1080;
+
+    private static final double THETA = 0.5d;
+
+    private static final long SEED = 1L;
+}
@@ -0,0 +1,23 @@
+package com.github.kjetilv.gravitypie2;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Engine#pull()}: the gravity solver's preparation plus the pull on every body. Positions do not change
+ * between invocations, so every invocation does the same work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PullsBenchmark {
+
+    @Benchmark
+    public double pulls(EngineState state) {
+        state.engine.pull();
+        return state.engine.bodies().ax[0];
+    }
+}
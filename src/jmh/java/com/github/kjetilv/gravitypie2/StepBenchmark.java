@@ -0,0 +1,21 @@
+package com.github.kjetilv.gravitypie2;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full {@link Engine#step()}, the work the simulation thread does per frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StepBenchmark {
+
+    @Benchmark
+    public void step(EngineState state) {
+        state.engine.step();
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.kjetilv.gravitypie2;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link Vector} record's arithmetic, as used by the camera and by code outside the body store.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VectorBenchmark {
+
+    private Vector a;
+
+    private Vector b;
+
+    @Setup
+    public void setUp() {
+        a = new Vector(1.5d, -2.25d, 3.125d);
+        b = new Vector(-0.75d, 4.5d, 2d);
+    }
+
+    @Benchmark
+    public Vector plus() {
+        return a.plus(b);
+    }
+
+    @Benchmark
+    public Vector minus() {
+        return a.minus(b);
+    }
+
+    @Benchmark
+    public Vector mul() {
+        return a.mul(1.01d);
+    }
+
+    @Benchmark
+    public Vector div() {
+        return a.div(1.01d);
+    }
+
+    @Benchmark
+    public double dot() {
+        return a.dot(b);
+    }
+
+    @Benchmark
+    public double distanceTo() {
+        return a.distanceTo(b);
+    }
+
+    @Benchmark
+    public void pullTerm(Blackhole blackhole) {
+        double distance = a.distanceTo(b);
+        blackhole.consume(b.minus(a).mul(1d / (distance * distance)));
+    }
+}
@@ -0,0 +1,245 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Steps the bodies of a {@link BodyArena} in place, for counts where neither the direct sum nor an octree rebuilt
+ * every step would keep up. Each step is one explicit Euler step with the {@link Engine}'s air brake, gravity well
+ * and wall bounce, all read and written through the arena's {@link VarHandle}s.
+ * <p>
+ * This is a coarser model than the Engine's, not the Engine off heap. The mutual pull is a monopole grid: the world is
+ * split into {@link #GRID}³ cells, each summarized by its body count and mean position, and each cell gets the pull
+ * of all the others, measured at its centre. A body takes the pull of its cell. There is no pull within a cell, there
+ * are no collisions, and the step is always a unit Euler step, so none of the {@link Engine.Settings} apply. What it
+ * shares with the Engine is the bodies, from {@link Engine#re(int, int)} and {@link Engine#scatter(long)}, the
+ * {@link Preset knobs} and the {@link Walls}.
+ */
+final class ArenaEngine implements AutoCloseable {
+
+    private final BodyArena arena;
+
+    private final MemorySegment segment;
+
+    private final World world;
+
+    private final Parallel parallel;
+
+    private final int count;
+
+    private final double xBound;
+
+    private final double yBound;
+
+    private final double zBound;
+
+    private final double cellX;
+
+    private final double cellY;
+
+    private final double cellZ;
+
+    private final int[] cellCount = new int[CELLS];
+
+    private final double[] meanX = new double[CELLS];
+
+    private final double[] meanY = new double[CELLS];
+
+    private final double[] meanZ = new double[CELLS];
+
+    private final double[] fieldX = new double[CELLS];
+
+    private final double[] fieldY = new double[CELLS];
+
+    private final double[] fieldZ = new double[CELLS];
+
+    private final IntConsumer updateField = this::updateField;
+
+    private final IntConsumer move = this::move;
+
+    private Preset knobs = Preset.get(0);
+
+    private long steps;
+
+    /**
+     * @param arena   Bodies
+     * @param world   World
+     * @param threads Threads for the per-body loops
+     */
+    ArenaEngine(BodyArena arena, World world, int threads) {
+        this.arena = Objects.requireNonNull(arena, "arena");
+        this.segment = arena.segment();
+        this.world = Objects.requireNonNull(world, "world");
+        this.parallel = new Parallel(threads);
+        this.count = arena.count();
+        this.xBound = world.xBound();
+        this.yBound = world.yBound();
+        this.zBound = world.zBound();
+        this.cellX = (double) world.sizeX() / GRID;
+        this.cellY = (double) world.sizeY() / GRID;
+        this.cellZ = (double) world.sizeZ() / GRID;
+    }
+
+    void apply(Preset preset) {
+        this.knobs = Objects.requireNonNull(preset, "preset");
+    }
+
+    /**
+     * Gives the bodies the radii and weights of {@link Engine#re(int, int)}, and scatters them as
+     * {@link Engine#scatter(long)} does, so the same seed and count give the same bodies.
+     *
+     * @param seed Seed
+     */
+    void scatter(long seed) {
+        Range range = world.spawnRange();
+        parallel.forEach(Math.ceilDiv(count, Engine.SCATTER_CHUNK), chunk -> {
+            SplittableRandom random = Engine.chunkRandom(seed, chunk);
+            for (int i = chunk * Engine.SCATTER_CHUNK, end = Math.min(count, i + Engine.SCATTER_CHUNK); i < end; i++) {
+                long index = i;
+                Re re = Engine.re(i, count);
+                BodyArena.X.set(segment, 0L, index, random.nextDouble(range.min(), range.max()));
+                BodyArena.Y.set(segment, 0L, index, random.nextDouble(range.min(), range.max()));
+                BodyArena.Z.set(segment, 0L, index, random.nextDouble(range.min(), range.max()));
+                BodyArena.VX.set(segment, 0L, index, 0d);
+                BodyArena.VY.set(segment, 0L, index, 0d);
+                BodyArena.VZ.set(segment, 0L, index, 0d);
+                BodyArena.RADIUS.set(segment, 0L, index, re.radius());
+                BodyArena.WEIGHT.set(segment, 0L, index, re.weight());
+            }
+        });
+        steps = 0;
+    }
+
+    void step() {
+        summarize();
+        parallel.forEach(CELLS, updateField);
+        parallel.forEach(count, move);
+        steps++;
+    }
+
+    long steps() {
+        return steps;
+    }
+
+    @Override
+    public void close() {
+        parallel.close();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + arena + " in " + world + ", " + GRID + "³ cells, " + parallel + "]";
+    }
+
+    /**
+     * Sums the bodies into their cells, serially so the sums come out the same for any thread count.
+     */
+    private void summarize() {
+        Arrays.fill(cellCount, 0);
+        Arrays.fill(meanX, 0d);
+        Arrays.fill(meanY, 0d);
+        Arrays.fill(meanZ, 0d);
+        for (long i = 0; i < count; i++) {
+            double x = (double) BodyArena.X.get(segment, 0L, i);
+            double y = (double) BodyArena.Y.get(segment, 0L, i);
+            double z = (double) BodyArena.Z.get(segment, 0L, i);
+            int cell = cell(x, y, z);
+            cellCount[cell]++;
+            meanX[cell] += x;
+            meanY[cell] += y;
+            meanZ[cell] += z;
+        }
+        for (int cell = 0; cell < CELLS; cell++) {
+            int bodies = cellCount[cell];
+            if (bodies > 0) {
+                meanX[cell] /= bodies;
+                meanY[cell] /= bodies;
+                meanZ[cell] /= bodies;
+            }
+        }
+    }
+
+    private void updateField(int cell) {
+        double px = -xBound + (cell % GRID + .5d) * cellX;
+        double py = -yBound + (cell / GRID % GRID + .5d) * cellY;
+        double pz = -zBound + (cell / (GRID * GRID) + .5d) * cellZ;
+        double pullX = 0d;
+        double pullY = 0d;
+        double pullZ = 0d;
+        for (int other = 0; other < CELLS; other++) {
+            int bodies = cellCount[other];
+            if (bodies > 0 && other != cell) {
+                double dx = meanX[other] - px;
+                double dy = meanY[other] - py;
+                double dz = meanZ[other] - pz;
+                double distSquared = dx * dx + dy * dy + dz * dz;
+                if (distSquared > 0d) {
+                    double force = bodies / distSquared;
+                    pullX += dx * force;
+                    pullY += dy * force;
+                    pullZ += dz * force;
+                }
+            }
+        }
+        fieldX[cell] = pullX;
+        fieldY[cell] = pullY;
+        fieldZ[cell] = pullZ;
+    }
+
+    private void move(int body) {
+        long i = body;
+        MemorySegment s = segment;
+        double x = (double) BodyArena.X.get(s, 0L, i);
+        double y = (double) BodyArena.Y.get(s, 0L, i);
+        double z = (double) BodyArena.Z.get(s, 0L, i);
+        double weight = (double) BodyArena.WEIGHT.get(s, 0L, i);
+        int cell = cell(x, y, z);
+        double g = knobs.gravConstant() * weight;
+
+        double ax = fieldX[cell] * g;
+        double ay = fieldY[cell] * g + (y + yBound) * Walls.groundPull(knobs.gravityWell(), weight);
+        double az = fieldZ[cell] * g;
+
+        double brake = 1 - knobs.airBrake();
+        double vx = ((double) BodyArena.VX.get(s, 0L, i) + ax) * brake;
+        double vy = ((double) BodyArena.VY.get(s, 0L, i) + ay) * brake;
+        double vz = ((double) BodyArena.VZ.get(s, 0L, i) + az) * brake;
+        x += vx;
+        y += vy;
+        z += vz;
+
+        double r = (double) BodyArena.RADIUS.get(s, 0L, i);
+        if (Walls.outside(x, r, xBound) || Walls.outside(y, r, yBound) || Walls.outside(z, r, zBound)) {
+            double wallBrake = 1 - knobs.wallBrake();
+            vx = Walls.velocity(x, vx, r, xBound) * wallBrake;
+            vy = Walls.velocity(y, vy, r, yBound) * wallBrake;
+            vz = Walls.velocity(z, vz, r, zBound) * wallBrake;
+            x = Walls.position(x, r, xBound);
+            y = Walls.position(y, r, yBound);
+            z = Walls.position(z, r, zBound);
+        }
+
+        BodyArena.AX.set(s, 0L, i, ax);
+        BodyArena.AY.set(s, 0L, i, ay);
+        BodyArena.AZ.set(s, 0L, i, az);
+        BodyArena.VX.set(s, 0L, i, vx);
+        BodyArena.VY.set(s, 0L, i, vy);
+        BodyArena.VZ.set(s, 0L, i, vz);
+        BodyArena.X.set(s, 0L, i, x);
+        BodyArena.Y.set(s, 0L, i, y);
+        BodyArena.Z.set(s, 0L, i, z);
+    }
+
+    private int cell(double x, double y, double z) {
+        int cx = Math.clamp((long) Math.floor((x + xBound) / cellX), 0, GRID - 1);
+        int cy = Math.clamp((long) Math.floor((y + yBound) / cellY), 0, GRID - 1);
+        int cz = Math.clamp((long) Math.floor((z + zBound) / cellZ), 0, GRID - 1);
+        return cx + GRID * (cy + GRID * cz);
+    }
+
+    /**
+     * Cells along each axis.
+     */
+    static final int GRID = 16;
+
+    private static final int CELLS = GRID * GRID * GRID;
+}
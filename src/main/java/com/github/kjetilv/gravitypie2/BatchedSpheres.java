@@ -0,0 +1,124 @@
+package com.github.kjetilv.gravitypie2;
+
+import javafx.scene.Node;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.PhongMaterial;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+
+/**
+ * Renders all bodies as one {@link TriangleMesh}, so the scene graph has a single node to track and draw. Each
+ * frame, the points and texture coordinates of all bodies are rewritten in one bulk update each.
+ * <p>
+ * The colours come from a texture atlas: one column per {@link Spectrum} colour, quantized to
+ * {@link #PALETTE_SIZE} steps, and one row per brightness level. A body's colour and distance-based brightness is
+ * then just its texture coordinate.
+ */
+final class BatchedSpheres {
+
+    private final int count;
+
+    private final UnitSphere sphere;
+
+    private final float[] radius;
+
+    private final float[] column;
+
+    private final float[] points;
+
+    private final float[] texCoords;
+
+    private final TriangleMesh mesh = new TriangleMesh();
+
+    private final MeshView view = new MeshView(mesh);
+
+    BatchedSpheres(Re[] res, int divisions) {
+        this.count = res.length;
+        this.sphere = UnitSphere.of(divisions);
+        this.radius = new float[count];
+        this.column = new float[count];
+        for (int i = 0; i < count; i++) {
+            radius[i] = (float) res[i].radius();
+            column[i] = (float) ((Spectrum.bucket(i, count, PALETTE_SIZE) + 0.5d) / PALETTE_SIZE);
+        }
+        this.points = new float[count * sphere.vertexCount() * 3];
+        this.texCoords = new float[count * 2];
+
+        int[] triangles = sphere.triangles();
+        int vertices = sphere.vertexCount();
+        int[] faces = new int[count * triangles.length * 2];
+        int f = 0;
+        for (int i = 0; i < count; i++) {
+            int base = i * vertices;
+            for (int vertex : triangles) {
+                faces[f++] = base + vertex;
+                faces[f++] = i;
+            }
+        }
+
+        mesh.getPoints().setAll(points);
+        mesh.getTexCoords().setAll(texCoords);
+        mesh.getFaces().setAll(faces);
+
+        PhongMaterial material = new PhongMaterial();
+        material.setDiffuseMap(atlas());
+        view.setMaterial(material);
+        view.setCullFace(CullFace.BACK);
+    }
+
+    Node node() {
+        return view;
+    }
+
+    /**
+     * @param snapshot     Positions
+     * @param dimDistance  Distance from origo at which bodies go dark
+     */
+    void update(Snapshot snapshot, double dimDistance) {
+        float[] template = sphere.points();
+        int vertices = sphere.vertexCount();
+        int p = 0;
+        for (int i = 0; i < count; i++) {
+            float x = (float) snapshot.x[i];
+            float y = (float) snapshot.y[i];
+            float z = (float) snapshot.z[i];
+            float r = radius[i];
+            for (int v = 0; v < vertices * 3; v += 3) {
+                points[p++] = x + template[v] * r;
+                points[p++] = y + template[v + 1] * r;
+                points[p++] = z + template[v + 2] * r;
+            }
+            double dim = 1 - snapshot.distanceToOrigo(i) / dimDistance;
+            int level = (int) Math.max(0, Math.min(LEVELS - 1, dim * LEVELS));
+            texCoords[i * 2] = column[i];
+            texCoords[i * 2 + 1] = (level + 0.5f) / LEVELS;
+        }
+        mesh.getPoints().set(0, points, 0, points.length);
+        mesh.getTexCoords().set(0, texCoords, 0, texCoords.length);
+    }
+
+    static final int PALETTE_SIZE = 256;
+
+    static final int LEVELS = 16;
+
+    private static final int CELL = 4;
+
+    private static WritableImage atlas() {
+        WritableImage image = new WritableImage(PALETTE_SIZE * CELL, LEVELS * CELL);
+        PixelWriter writer = image.getPixelWriter();
+        for (int c = 0; c < PALETTE_SIZE; c++) {
+            Re.Color color = Spectrum.color(c, PALETTE_SIZE);
+            for (int level = 0; level < LEVELS; level++) {
+                javafx.scene.paint.Color rgb = color.rgb((level + 1d) / LEVELS, 1d);
+                for (int dx = 0; dx < CELL; dx++) {
+                    for (int dy = 0; dy < CELL; dy++) {
+                        writer.setColor(c * CELL + dx, level * CELL + dy, rgb);
+                    }
+                }
+            }
+        }
+        return image;
+    }
+}
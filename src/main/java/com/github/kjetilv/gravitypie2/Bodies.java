@@ -0,0 +1,165 @@
+package com.github.kjetilv.gravitypie2;
+
+/**
+ * Structure-of-arrays body store. Positions, velocities, accelerations and pending collision impulses live in
+ * primitive arrays, and the per-body invariants derived from {@link Re} are computed once, so that a physics
+ * step can run without allocating.
+ */
+final class Bodies {
+
+    final int count;
+
+    final double[] x;
+
+    final double[] y;
+
+    final double[] z;
+
+    final double[] vx;
+
+    final double[] vy;
+
+    final double[] vz;
+
+    final double[] ax;
+
+    final double[] ay;
+
+    final double[] az;
+
+    final double[] ix;
+
+    final double[] iy;
+
+    final double[] iz;
+
+    /**
+     * Potential energy of each body, as of the last pull pass that asked for it. See {@link Diagnostics}.
+     */
+    final double[] potential;
+
+    final double[] radius;
+
+    final double[] weight;
+
+    final double[] mass;
+
+    final double[] inverseMass;
+
+    /**
+     * Bodies that have settled and are left alone until disturbed.
+     */
+    final boolean[] asleep;
+
+    final double maxRadius;
+
+    final double minRadius;
+
+    Bodies(Re[] res) {
+        this(res.length, maxRadius(res), minRadius(res));
+        for (int i = 0; i < count; i++) {
+            set(i, res[i]);
+        }
+    }
+
+    /**
+     * Room for bodies that are filled in with {@link #set(int, Re)} as they arrive, all from
+     * {@link Engine#re(int, int)} and within its {@link Engine#RE_RANGE}.
+     *
+     * @param capacity Bodies
+     */
+    Bodies(int capacity) {
+        this(capacity, Engine.RE_RANGE.max(), Engine.RE_RANGE.min());
+    }
+
+    private Bodies(int count, double maxRadius, double minRadius) {
+        this.count = count;
+
+        x = new double[count];
+        y = new double[count];
+        z = new double[count];
+        vx = new double[count];
+        vy = new double[count];
+        vz = new double[count];
+        ax = new double[count];
+        ay = new double[count];
+        az = new double[count];
+        ix = new double[count];
+        iy = new double[count];
+        iz = new double[count];
+        potential = new double[count];
+
+        radius = new double[count];
+        weight = new double[count];
+        mass = new double[count];
+        inverseMass = new double[count];
+        asleep = new boolean[count];
+
+        this.maxRadius = maxRadius;
+        this.minRadius = minRadius;
+    }
+
+    /**
+     * Sets the invariants of body i.
+     */
+    void set(int i, Re re) {
+        radius[i] = re.radius();
+        weight[i] = re.weight();
+        mass[i] = re.mass();
+        inverseMass[i] = 1d / mass[i];
+    }
+
+    /**
+     * @param capacity Bodies in the copy
+     * @param kept     Bodies to copy, from the start
+     * @return A larger store, with the first bodies of this one
+     */
+    Bodies grow(int capacity, int kept) {
+        Bodies grown = new Bodies(capacity, maxRadius, minRadius);
+        copy(x, grown.x, kept);
+        copy(y, grown.y, kept);
+        copy(z, grown.z, kept);
+        copy(vx, grown.vx, kept);
+        copy(vy, grown.vy, kept);
+        copy(vz, grown.vz, kept);
+        copy(ax, grown.ax, kept);
+        copy(ay, grown.ay, kept);
+        copy(az, grown.az, kept);
+        copy(ix, grown.ix, kept);
+        copy(iy, grown.iy, kept);
+        copy(iz, grown.iz, kept);
+        copy(potential, grown.potential, kept);
+        copy(radius, grown.radius, kept);
+        copy(weight, grown.weight, kept);
+        copy(mass, grown.mass, kept);
+        copy(inverseMass, grown.inverseMass, kept);
+        System.arraycopy(asleep, 0, grown.asleep, 0, kept);
+        return grown;
+    }
+
+    void position(int i, Vector v) {
+        x[i] = v.x();
+        y[i] = v.y();
+        z[i] = v.z();
+    }
+
+    private static double maxRadius(Re[] res) {
+        double max = 0d;
+        for (Re re : res) {
+            max = Math.max(max, re.radius());
+        }
+        return max;
+    }
+
+    private static double minRadius(Re[] res) {
+        double min = Double.MAX_VALUE;
+        for (Re re : res) {
+            min = Math.min(min, re.radius());
+        }
+        return res.length == 0 ? 0d : min;
+    }
+
+    private static void copy(double[] from, double[] to, int count) {
+        System.arraycopy(from, 0, to, 0, count);
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Off-heap body store, for body counts that the heap should not hold. Each body is a {@link #BODY} struct in one
+ * {@link MemorySegment}, allocated in a shared {@link Arena} or mapped from a file, and read and written through
+ * the {@link VarHandle}s below. Unlike {@link Bodies}, a body is one contiguous struct, so a body's state is a single
+ * cache line or two away instead of spread over a dozen arrays.
+ * <p>
+ * A file-backed arena is not a checkpoint: the file holds the structs and nothing else, and is overwritten on open.
+ * It lets the page cache, rather than the heap or the process, hold the bodies.
+ */
+final class BodyArena implements AutoCloseable {
+
+    private final int count;
+
+    private final Arena arena;
+
+    private final MemorySegment segment;
+
+    private final boolean mapped;
+
+    private BodyArena(int count, Arena arena, MemorySegment segment, boolean mapped) {
+        this.count = count;
+        this.arena = arena;
+        this.segment = segment;
+        this.mapped = mapped;
+    }
+
+    int count() {
+        return count;
+    }
+
+    MemorySegment segment() {
+        return segment;
+    }
+
+    @Override
+    public void close() {
+        if (mapped) {
+            segment.force();
+        }
+        arena.close();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + count + " bodies, " + segment.byteSize() / (1024 * 1024) + "MiB" +
+               (mapped ? ", file-backed" : "") + "]";
+    }
+
+    /**
+     * Position, velocity, acceleration, radius and weight. No mass, as the {@link ArenaEngine} has no collisions to
+     * share impulses by.
+     */
+    static final StructLayout BODY = MemoryLayout.structLayout(
+        ValueLayout.JAVA_DOUBLE.withName("x"),
+        ValueLayout.JAVA_DOUBLE.withName("y"),
+        ValueLayout.JAVA_DOUBLE.withName("z"),
+        ValueLayout.JAVA_DOUBLE.withName("vx"),
+        ValueLayout.JAVA_DOUBLE.withName("vy"),
+        ValueLayout.JAVA_DOUBLE.withName("vz"),
+        ValueLayout.JAVA_DOUBLE.withName("ax"),
+        ValueLayout.JAVA_DOUBLE.withName("ay"),
+        ValueLayout.JAVA_DOUBLE.withName("az"),
+        ValueLayout.JAVA_DOUBLE.withName("radius"),
+        ValueLayout.JAVA_DOUBLE.withName("weight")
+    );
+
+    /*
+     * Coordinates are (segment, base offset, body index), where the base offset is always 0.
+     */
+
+    static final VarHandle X = field("x");
+
+    static final VarHandle Y = field("y");
+
+    static final VarHandle Z = field("z");
+
+    static final VarHandle VX = field("vx");
+
+    static final VarHandle VY = field("vy");
+
+    static final VarHandle VZ = field("vz");
+
+    static final VarHandle AX = field("ax");
+
+    static final VarHandle AY = field("ay");
+
+    static final VarHandle AZ = field("az");
+
+    static final VarHandle RADIUS = field("radius");
+
+    static final VarHandle WEIGHT = field("weight");
+
+    /**
+     * @param count Bodies
+     * @return An arena in memory, zeroed
+     */
+    static BodyArena allocate(int count) {
+        Arena arena = Arena.ofShared();
+        return new BodyArena(count, arena, arena.allocate(BODY, count), false);
+    }
+
+    /**
+     * @param count Bodies
+     * @param path  File to map the bodies to, created or truncated
+     * @return An arena mapped from the file, zeroed
+     * @throws IOException If the file could not be mapped
+     */
+    static BodyArena map(int count, Path path) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (
+            FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+            )
+        ) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_WRITE, 0L, BODY.byteSize() * count, arena);
+            return new BodyArena(count, arena, segment, true);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw new IOException(path + ": Failed to map " + count + " bodies", e);
+        }
+    }
+
+    private static VarHandle field(String name) {
+        return BODY.arrayElementVarHandle(MemoryLayout.PathElement.groupElement(name));
+    }
+}
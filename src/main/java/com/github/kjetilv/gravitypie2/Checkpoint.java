@@ -0,0 +1,213 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * The full evolving state of an {@link Engine}: its bodies, their positions and velocities, and the five knobs. An
+ * instance is a reusable buffer, so that taking a checkpoint is a few array copies. The binary format is a small
+ * header followed by the bodies, all big-endian:
+ * <pre>
+ * magic, version, count (int), step (long), world size x, y, z (int), the five knobs (double),
+ * then per body: weight, radius, density, colour rgba, specular rgba (double),
+ * then the x, y, z, vx, vy, vz arrays (double)
+ * </pre>
+ */
+final class Checkpoint {
+
+    private final Re[] res;
+
+    private final double[] x;
+
+    private final double[] y;
+
+    private final double[] z;
+
+    private final double[] vx;
+
+    private final double[] vy;
+
+    private final double[] vz;
+
+    private World world;
+
+    private Preset knobs;
+
+    private long step;
+
+    Checkpoint(Re[] res) {
+        this.res = res;
+        int count = res.length;
+        x = new double[count];
+        y = new double[count];
+        z = new double[count];
+        vx = new double[count];
+        vy = new double[count];
+        vz = new double[count];
+    }
+
+    Re[] res() {
+        return res;
+    }
+
+    World world() {
+        return world;
+    }
+
+    long step() {
+        return step;
+    }
+
+    /**
+     * Copies the state out of the engine. Call from the thread that steps it.
+     *
+     * @param engine Engine
+     * @return this
+     */
+    Checkpoint copyFrom(Engine engine) {
+        Bodies bodies = engine.bodies();
+        int count = bodies.count;
+        System.arraycopy(bodies.x, 0, x, 0, count);
+        System.arraycopy(bodies.y, 0, y, 0, count);
+        System.arraycopy(bodies.z, 0, z, 0, count);
+        System.arraycopy(bodies.vx, 0, vx, 0, count);
+        System.arraycopy(bodies.vy, 0, vy, 0, count);
+        System.arraycopy(bodies.vz, 0, vz, 0, count);
+        world = engine.world();
+        knobs = engine.knobs();
+        step = engine.steps();
+        return this;
+    }
+
+    /**
+     * Loads the state into an engine created with this checkpoint's {@link #res()}.
+     *
+     * @param engine Engine
+     */
+    void restore(Engine engine) {
+        Bodies bodies = engine.bodies();
+        if (bodies.count != res.length) {
+            throw new IllegalArgumentException("Expected " + res.length + " bodies, engine has " + bodies.count);
+        }
+        if (!engine.world().equals(world)) {
+            throw new IllegalArgumentException("Expected " + world + ", engine has " + engine.world());
+        }
+        System.arraycopy(x, 0, bodies.x, 0, res.length);
+        System.arraycopy(y, 0, bodies.y, 0, res.length);
+        System.arraycopy(z, 0, bodies.z, 0, res.length);
+        System.arraycopy(vx, 0, bodies.vx, 0, res.length);
+        System.arraycopy(vy, 0, bodies.vy, 0, res.length);
+        System.arraycopy(vz, 0, bodies.vz, 0, res.length);
+        engine.positionsChanged();
+        engine.apply(knobs);
+        engine.steps(step);
+    }
+
+    /**
+     * Writes to a temporary file next to the target, forces it to disk, and moves it into place, so that a crash
+     * mid-write leaves the previous checkpoint intact.
+     *
+     * @param path Target
+     * @throws IOException If the write fails
+     */
+    void write(Path path) throws IOException {
+        Path target = path.toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (
+            FileOutputStream file = new FileOutputStream(temp.toFile());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE))
+        ) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(res.length);
+            out.writeLong(step);
+            out.writeInt(world.sizeX());
+            out.writeInt(world.sizeY());
+            out.writeInt(world.sizeZ());
+            out.writeDouble(knobs.gravConstant());
+            out.writeDouble(knobs.airBrake());
+            out.writeDouble(knobs.collisionBrake());
+            out.writeDouble(knobs.wallBrake());
+            out.writeDouble(knobs.gravityWell());
+            for (Re re : res) {
+                out.writeDouble(re.weight());
+                out.writeDouble(re.radius());
+                out.writeDouble(re.density());
+                writeColor(out, re.color());
+                writeColor(out, re.specular());
+            }
+            for (double[] array : List.of(x, y, z, vx, vy, vz)) {
+                for (double value : array) {
+                    out.writeDouble(value);
+                }
+            }
+            out.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * As {@link #read(Path)}, for starting from the checkpoint.
+     *
+     * @param path Checkpoint file
+     * @return The checkpoint
+     * @throws UncheckedIOException If it could not be read
+     */
+    static Checkpoint load(Path path) {
+        try {
+            Checkpoint checkpoint = read(path);
+            System.out.println("Restored step " + checkpoint.step() + " from " + path);
+            return checkpoint;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to restore " + path, e);
+        }
+    }
+
+    static Checkpoint read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            int magic = in.readInt();
+            if (magic != MAGIC) {
+                throw new IOException(path + ": Not a checkpoint, magic " + Integer.toHexString(magic));
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(path + ": Unsupported checkpoint version " + version);
+            }
+            int count = in.readInt();
+            long step = in.readLong();
+            World world = new World(in.readInt(), in.readInt(), in.readInt());
+            Preset knobs = new Preset(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+            Re[] res = new Re[count];
+            for (int i = 0; i < count; i++) {
+                res[i] = new Re(in.readDouble(), in.readDouble(), in.readDouble(), readColor(in), readColor(in));
+            }
+            Checkpoint checkpoint = new Checkpoint(res);
+            for (double[] array : List.of(checkpoint.x, checkpoint.y, checkpoint.z, checkpoint.vx, checkpoint.vy, checkpoint.vz)) {
+                for (int i = 0; i < count; i++) {
+                    array[i] = in.readDouble();
+                }
+            }
+            checkpoint.world = world;
+            checkpoint.knobs = knobs;
+            checkpoint.step = step;
+            return checkpoint;
+        }
+    }
+
+    private static final int MAGIC = 0x47504945;
+
+    private static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static void writeColor(DataOutputStream out, Re.Color color) throws IOException {
+        out.writeDouble(color.r());
+        out.writeDouble(color.g());
+        out.writeDouble(color.b());
+        out.writeDouble(color.opacity());
+    }
+
+    private static Re.Color readColor(DataInputStream in) throws IOException {
+        return new Re.Color(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+    }
+}
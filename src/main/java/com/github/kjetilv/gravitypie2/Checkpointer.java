@@ -0,0 +1,115 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Takes periodic {@link Checkpoint}s of an engine without holding up its steps. {@link #afterStep()} is called by
+ * the thread stepping the engine: when a checkpoint is due, and the previous one is done writing, it copies the state
+ * into its buffer and hands it to a background thread for serialization and fsync. When the previous write is
+ * still in progress, the checkpoint is skipped rather than waited for.
+ */
+final class Checkpointer implements AutoCloseable {
+
+    private final Engine engine;
+
+    private final Path path;
+
+    private final long intervalNanos;
+
+    private final ExecutorService writer;
+
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    private final AtomicLong written;
+
+    private final AtomicLong skipped;
+
+    private final Checkpoint buffer;
+
+    private long nextDue;
+
+    Checkpointer(Engine engine, Path path, Duration interval) {
+        this.engine = Objects.requireNonNull(engine, "engine");
+        this.path = Objects.requireNonNull(path, "path");
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Invalid interval: " + interval);
+        }
+        this.intervalNanos = interval.toNanos();
+        this.writer = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("checkpoint").daemon(true).factory()
+        );
+        this.written = engine.metrics().gauge("checkpoints written");
+        this.skipped = engine.metrics().gauge("checkpoints skipped");
+        this.buffer = new Checkpoint(engine.res());
+        this.nextDue = System.nanoTime() + intervalNanos;
+    }
+
+    void afterStep() {
+        long now = System.nanoTime();
+        if (now - nextDue < 0) {
+            return;
+        }
+        nextDue = now + intervalNanos;
+        if (!writing.compareAndSet(false, true)) {
+            skipped.incrementAndGet();
+            return;
+        }
+        buffer.copyFrom(engine);
+        writer.execute(this::write);
+    }
+
+    /**
+     * Waits for any write in progress, then writes the current state. Call from the thread stepping the engine, or
+     * after it has stopped.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println(this + ": Timed out waiting for checkpoint write");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        buffer.copyFrom(engine);
+        write();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + path + " every " + intervalNanos / 1_000_000_000L + "s]";
+    }
+
+    private void write() {
+        try {
+            buffer.write(path);
+            written.incrementAndGet();
+        } catch (Exception e) {
+            System.err.println(this + ": Failed to write step " + buffer.step() + ": " + e);
+        } finally {
+            writing.set(false);
+        }
+    }
+
+    /**
+     * @param engine  Engine to checkpoint
+     * @param options Options
+     * @return A checkpointer if {@code --checkpoint} was given, otherwise null
+     */
+    static Checkpointer from(Engine engine, Options options) {
+        return options.has("checkpoint")
+            ? new Checkpointer(
+                engine,
+                Path.of(options.string("checkpoint", null)),
+                Duration.ofSeconds(options.integer("checkpoint.interval", DEFAULT_INTERVAL_SECONDS))
+            )
+            : null;
+    }
+
+    static final int DEFAULT_INTERVAL_SECONDS = 60;
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30L;
+}
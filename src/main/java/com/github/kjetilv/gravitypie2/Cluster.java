@@ -0,0 +1,401 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Runs the simulation in a number of {@link DomainWorker} processes on this machine, each stepping one {@link Domain}
+ * slab of the world. The workers connect to this process over TCP on the loopback address, and it relays between
+ * them: on each step, first the cell summaries and halos, then the migrating bodies. Options:
+ * <pre>
+ * --workers N         Worker processes, at most {@link Domain#GRID} (4)
+ * --count N           Bodies (300)
+ * --width/height/depth World dimensions (1920/1080/1920)
+ * --preset P          Preset (1)
+ * --steps S           Steps to run (100)
+ * --seed S            Seed for the scatter (random)
+ * --compare           Run the single-process engine too, and compare
+ * --tolerance T       With --compare, the largest mean relative error of the pulls on the first step (0.01)
+ * </pre>
+ * With {@code --compare}, the pulls and positions after the first and the last step are compared with those of the
+ * {@link Engine}, with direct gravity and from the same scatter. Collisions are resolved in a different order, and
+ * far bodies pull from their cell's mean position, so the runs diverge, but the pulls of the first step should agree
+ * closely. Exits with status 1 if they do not, or if a body was lost or duplicated on the way.
+ * <p>
+ * The domains step as the {@link Engine} does with its default settings: Euler, direct gravity within a slab, and
+ * serial contacts, with no sleep. The engine options of {@link Headless}, such as {@code --gravity} and
+ * {@code --integrator}, are rejected rather than ignored.
+ */
+public final class Cluster {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (!run(Options.parse(args)).passed()) {
+            System.exit(1);
+        }
+    }
+
+    private Cluster() {
+    }
+
+    private static final int DEFAULT_WORKERS = 4;
+
+    private static final int DEFAULT_WIDTH = 1920;
+
+    private static final int DEFAULT_HEIGHT = 1080;
+
+    private static final int DEFAULT_STEPS = 100;
+
+    private static final double DEFAULT_TOLERANCE = 0.01d;
+
+    private static final int ACCEPT_TIMEOUT_MILLIS = 60_000;
+
+    private static final int EXIT_TIMEOUT_SECONDS = 10;
+
+    /**
+     * A block with no bodies or cells in it.
+     */
+    private static final byte[] EMPTY = new byte[Integer.BYTES];
+
+    /**
+     * Runs the workers, and the engine too with {@code --compare}.
+     *
+     * @param options Options, as for {@link #main(String[])}
+     * @return The outcome
+     */
+    static Result run(Options options) throws IOException, InterruptedException {
+        List<String> unsupported = Engine.Settings.OPTIONS.stream().filter(options::has).toList();
+        if (!unsupported.isEmpty()) {
+            throw new IllegalArgumentException(
+                "Domains step with Euler and direct gravity only, unsupported options: " + unsupported
+            );
+        }
+        int workers = options.integer("workers", DEFAULT_WORKERS);
+        World world = new World(
+            options.integer("width", DEFAULT_WIDTH),
+            options.integer("height", DEFAULT_HEIGHT),
+            options.integer("depth", DEFAULT_WIDTH)
+        );
+        int count = options.integer("count", Engine.DEFAULT_COUNT);
+        int steps = options.integer("steps", DEFAULT_STEPS);
+        long seed = options.longInteger("seed", System.nanoTime());
+        Preset preset = Preset.get(options.integer("preset", 1));
+        boolean compare = options.flag("compare", false);
+        if (workers < 1 || workers > Domain.GRID || steps < 1) {
+            throw new IllegalArgumentException(
+                "Invalid run: " + workers + " workers, at most " + Domain.GRID + ", for " + steps + " steps"
+            );
+        }
+        System.out.printf("Seed %d: %d bodies on %d workers for %d steps%n", seed, count, workers, steps);
+
+        State first = compare ? new State(count) : null;
+        State last = new State(count);
+        long elapsed;
+        try (ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
+            List<Process> processes = launch(workers, server.getLocalPort());
+            Link[] links = new Link[workers];
+            try {
+                for (int i = 0; i < workers; i++) {
+                    Link link = Link.accept(server);
+                    if (link.domain() < 0 || link.domain() >= workers || links[link.domain()] != null) {
+                        link.close();
+                        throw new IllegalStateException("Unexpected worker for domain " + link.domain());
+                    }
+                    links[link.domain()] = link;
+                }
+                for (Link link : links) {
+                    link.init(workers, count, world, seed, preset, steps, compare);
+                }
+                long start = System.nanoTime();
+                for (int step = 1; step <= steps; step++) {
+                    relay(links);
+                    if (step == steps || step == 1 && compare) {
+                        State state = step == steps ? last : first;
+                        for (Link link : links) {
+                            state.read(readBlock(link.in()));
+                        }
+                    }
+                }
+                elapsed = System.nanoTime() - start;
+            } finally {
+                for (Link link : links) {
+                    if (link != null) {
+                        link.close();
+                    }
+                }
+                for (Process process : processes) {
+                    if (!process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                        process.destroyForcibly();
+                    }
+                }
+            }
+        }
+        System.out.printf(
+            "%d bodies, %d steps in %.2fs: %.1f steps/s%n",
+            count,
+            steps,
+            elapsed / 1_000_000_000d,
+            steps * 1_000_000_000d / Math.max(1L, elapsed)
+        );
+
+        boolean complete = first == null ? last.complete() : first.complete() && last.complete();
+        if (!complete) {
+            System.out.println("Bodies were lost or duplicated");
+        }
+        double tolerance = options.decimal("tolerance", DEFAULT_TOLERANCE);
+        if (!compare) {
+            return new Result(complete, null, null, tolerance);
+        }
+        Engine.Settings settings = new Engine.Settings(Gravity.Solver.DIRECT, 0.5d, true, 1);
+        try (Engine engine = new Engine(world, Engine.res(count), settings)) {
+            engine.scatter(seed);
+            engine.apply(preset);
+            engine.step();
+            Comparison firstComparison = compare(1, engine.bodies(), first);
+            for (int step = 1; step < steps; step++) {
+                engine.step();
+            }
+            Comparison lastComparison = compare(steps, engine.bodies(), last);
+            if (firstComparison.pullMean() > tolerance) {
+                System.out.printf(
+                    "Mean pull error %.3e exceeds tolerance %.3e%n",
+                    firstComparison.pullMean(),
+                    tolerance
+                );
+            }
+            return new Result(complete, firstComparison, lastComparison, tolerance);
+        }
+    }
+
+    static void writeBlock(DataOutputStream out, byte[] block) throws IOException {
+        out.writeInt(block.length);
+        out.write(block);
+    }
+
+    static byte[] readBlock(DataInputStream in) throws IOException {
+        return in.readNBytes(in.readInt());
+    }
+
+    static List<byte[]> readBlocks(DataInputStream in, int count) throws IOException {
+        List<byte[]> blocks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            blocks.add(readBlock(in));
+        }
+        return blocks;
+    }
+
+    /**
+     * Relays a step: each domain gets the summaries of all others and the halos of its neighbours, and then the
+     * bodies migrating to it.
+     */
+    private static void relay(Link[] links) throws IOException {
+        int domains = links.length;
+        byte[][] summaries = new byte[domains][];
+        byte[][] left = new byte[domains][];
+        byte[][] right = new byte[domains][];
+        for (int d = 0; d < domains; d++) {
+            DataInputStream in = links[d].in();
+            summaries[d] = readBlock(in);
+            left[d] = readBlock(in);
+            right[d] = readBlock(in);
+        }
+        for (int d = 0; d < domains; d++) {
+            DataOutputStream out = links[d].out();
+            for (int other = 0; other < domains; other++) {
+                if (other != d) {
+                    writeBlock(out, summaries[other]);
+                }
+            }
+            writeBlock(out, d > 0 ? right[d - 1] : EMPTY);
+            writeBlock(out, d < domains - 1 ? left[d + 1] : EMPTY);
+            out.flush();
+        }
+        byte[][][] migrants = new byte[domains][][];
+        for (int d = 0; d < domains; d++) {
+            migrants[d] = readBlocks(links[d].in(), domains).toArray(byte[][]::new);
+        }
+        for (int d = 0; d < domains; d++) {
+            DataOutputStream out = links[d].out();
+            for (int from = 0; from < domains; from++) {
+                writeBlock(out, migrants[from][d]);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Starts the workers with the same java, JVM arguments and class or module path as this process.
+     */
+    private static List<Process> launch(int workers, int port) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+            .filter(argument -> !argument.startsWith("-Djdk.module") && !argument.startsWith("-agentlib"))
+            .forEach(command::add);
+        String modulePath = System.getProperty("jdk.module.path");
+        if (modulePath == null) {
+            command.addAll(List.of("-cp", System.getProperty("java.class.path"), DomainWorker.class.getName()));
+        } else {
+            command.addAll(List.of(
+                "--module-path",
+                modulePath,
+                "--module",
+                DomainWorker.class.getModule().getName() + "/" + DomainWorker.class.getName()
+            ));
+        }
+        List<Process> processes = new ArrayList<>(workers);
+        for (int domain = 0; domain < workers; domain++) {
+            List<String> worker = new ArrayList<>(command);
+            worker.addAll(List.of("--port", String.valueOf(port), "--domain", String.valueOf(domain)));
+            processes.add(new ProcessBuilder(worker).inheritIO().start());
+        }
+        return processes;
+    }
+
+    private static Comparison compare(int step, Bodies engine, State cluster) {
+        double pullSum = 0d;
+        double pullMax = 0d;
+        double driftSum = 0d;
+        double driftMax = 0d;
+        for (int i = 0; i < engine.count; i++) {
+            double ex = cluster.ax[i] - engine.ax[i];
+            double ey = cluster.ay[i] - engine.ay[i];
+            double ez = cluster.az[i] - engine.az[i];
+            double length = Math.sqrt(
+                engine.ax[i] * engine.ax[i] + engine.ay[i] * engine.ay[i] + engine.az[i] * engine.az[i]
+            );
+            double pullError = length == 0d ? 0d : Math.sqrt(ex * ex + ey * ey + ez * ez) / length;
+            pullSum += pullError;
+            pullMax = Math.max(pullMax, pullError);
+            double dx = cluster.x[i] - engine.x[i];
+            double dy = cluster.y[i] - engine.y[i];
+            double dz = cluster.z[i] - engine.z[i];
+            double drift = dx * dx + dy * dy + dz * dz;
+            driftSum += drift;
+            driftMax = Math.max(driftMax, drift);
+        }
+        int count = Math.max(1, engine.count);
+        Comparison comparison = new Comparison(
+            pullSum / count,
+            pullMax,
+            Math.sqrt(driftSum / count),
+            Math.sqrt(driftMax)
+        );
+        System.out.printf(
+            "step %d: pull error mean %.3e, max %.3e; drift rms %.3e, max %.3e%n",
+            step,
+            comparison.pullMean(),
+            comparison.pullMax(),
+            comparison.driftRms(),
+            comparison.driftMax()
+        );
+        return comparison;
+    }
+
+    /**
+     * @param complete  Whether every body was in exactly one domain, after the first and the last step
+     * @param first     Comparison with the engine after the first step, or null without {@code --compare}
+     * @param last      Comparison with the engine after the last step, or null without {@code --compare}
+     * @param tolerance Largest mean pull error allowed on the first step
+     */
+    record Result(boolean complete, Comparison first, Comparison last, double tolerance) {
+
+        boolean passed() {
+            return complete && (first == null || first.pullMean() <= tolerance);
+        }
+    }
+
+    /**
+     * The cluster's bodies against the engine's, by relative pull error and by distance.
+     */
+    record Comparison(double pullMean, double pullMax, double driftRms, double driftMax) {
+    }
+
+    /**
+     * A connected worker.
+     */
+    private record Link(int domain, Socket socket, DataInputStream in, DataOutputStream out) implements Closeable {
+
+        static Link accept(ServerSocket server) throws IOException {
+            Socket socket = server.accept();
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            return new Link(in.readInt(), socket, in, out);
+        }
+
+        void init(int domains, int count, World world, long seed, Preset knobs, int steps, boolean firstState)
+            throws IOException {
+            out.writeInt(domains);
+            out.writeInt(count);
+            out.writeInt(world.sizeX());
+            out.writeInt(world.sizeY());
+            out.writeInt(world.sizeZ());
+            out.writeLong(seed);
+            out.writeDouble(knobs.gravConstant());
+            out.writeDouble(knobs.airBrake());
+            out.writeDouble(knobs.collisionBrake());
+            out.writeDouble(knobs.wallBrake());
+            out.writeDouble(knobs.gravityWell());
+            out.writeInt(steps);
+            out.writeBoolean(firstState);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * The bodies as gathered from all domains, by index.
+     */
+    private static final class State {
+
+        private final double[] x;
+
+        private final double[] y;
+
+        private final double[] z;
+
+        private final double[] ax;
+
+        private final double[] ay;
+
+        private final double[] az;
+
+        private final int[] seen;
+
+        private State(int count) {
+            x = new double[count];
+            y = new double[count];
+            z = new double[count];
+            ax = new double[count];
+            ay = new double[count];
+            az = new double[count];
+            seen = new int[count];
+        }
+
+        void read(byte[] block) throws IOException {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(block))) {
+                for (int n = in.readInt(); n > 0; n--) {
+                    int i = in.readInt();
+                    x[i] = in.readDouble();
+                    y[i] = in.readDouble();
+                    z[i] = in.readDouble();
+                    in.skipNBytes(3L * Double.BYTES);
+                    ax[i] = in.readDouble();
+                    ay[i] = in.readDouble();
+                    az[i] = in.readDouble();
+                    seen[i]++;
+                }
+            }
+        }
+
+        boolean complete() {
+            return Arrays.stream(seen).allMatch(times -> times == 1);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Resolves collisions in parallel, and still deterministically. Contacts are first gathered, without touching any
+ * body, in the order the broad phase finds them. They are then coloured greedily in that order, so that no two
+ * contacts of the same colour share a body. The colours are resolved one after the other, and the contacts of each
+ * colour in parallel, each contact only writing to its own two bodies. The result depends on the contacts and their
+ * order only, not on the thread count.
+ * <p>
+ * Bodies with more than {@link #COLOURS} contacts of their own spill the rest into a last colour that is resolved
+ * serially.
+ */
+final class Contacts {
+
+    private final SpatialHash.Pairs narrowPhase;
+
+    private final IntConsumer resolve = this::resolve;
+
+    private final long[] used;
+
+    private final int[] colourStart = new int[COLOURS + 2];
+
+    private int[] first;
+
+    private int[] second;
+
+    private int[] colour;
+
+    private int[] sorted;
+
+    private int size;
+
+    private int runStart;
+
+    private int colours;
+
+    /**
+     * @param bodies      Bodies
+     * @param narrowPhase Resolves a contact, writing only to its two bodies
+     */
+    Contacts(int bodies, SpatialHash.Pairs narrowPhase) {
+        this.narrowPhase = Objects.requireNonNull(narrowPhase, "narrowPhase");
+        this.used = new long[bodies];
+        allocate(Math.max(INITIAL_CAPACITY, bodies));
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void add(int i, int j) {
+        if (size == first.length) {
+            allocate(size * 2);
+        }
+        first[size] = i;
+        second[size] = j;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int colours() {
+        return colours;
+    }
+
+    void resolve(Parallel parallel) {
+        colour();
+        for (int c = 0; c < COLOURS; c++) {
+            runStart = colourStart[c];
+            int runSize = colourStart[c + 1] - runStart;
+            if (runSize > 0) {
+                parallel.forEach(runSize, resolve);
+            }
+        }
+        for (int k = colourStart[COLOURS]; k < size; k++) {
+            int contact = sorted[k];
+            narrowPhase.pair(first[contact], second[contact]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + size + " contacts, " + colours + " colours]";
+    }
+
+    private void resolve(int k) {
+        int contact = sorted[runStart + k];
+        narrowPhase.pair(first[contact], second[contact]);
+    }
+
+    private void colour() {
+        Arrays.fill(colourStart, 0);
+        colours = 0;
+        for (int k = 0; k < size; k++) {
+            int i = first[k];
+            int j = second[k];
+            int c = Long.numberOfTrailingZeros(~(used[i] | used[j]));
+            if (c < COLOURS) {
+                used[i] |= 1L << c;
+                used[j] |= 1L << c;
+            }
+            colour[k] = c;
+            colourStart[c + 1]++;
+            colours = Math.max(colours, c + 1);
+        }
+        for (int c = 0; c <= COLOURS; c++) {
+            colourStart[c + 1] += colourStart[c];
+        }
+        for (int k = 0; k < size; k++) {
+            sorted[colourStart[colour[k]]++] = k;
+            used[first[k]] = 0L;
+            used[second[k]] = 0L;
+        }
+        for (int c = COLOURS; c > 0; c--) {
+            colourStart[c] = colourStart[c - 1];
+        }
+        colourStart[0] = 0;
+    }
+
+    private void allocate(int capacity) {
+        first = first == null ? new int[capacity] : Arrays.copyOf(first, capacity);
+        second = second == null ? new int[capacity] : Arrays.copyOf(second, capacity);
+        colour = new int[capacity];
+        sorted = new int[capacity];
+    }
+
+    private static final int COLOURS = Long.SIZE;
+
+    private static final int INITIAL_CAPACITY = 1024;
+}
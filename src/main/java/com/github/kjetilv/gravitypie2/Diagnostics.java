@@ -0,0 +1,299 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * The conserved quantities and event counts of the last {@link #capacity()} steps, for telling a physics change from
+ * an optimization. Each body counts as having unit mass, as the pulls are accelerations. Collisions share their
+ * impulses by {@link Bodies#mass}, so they change the momentum counted here, and wall bounces change it too. Angular
+ * momentum is taken about the centre of the world.
+ * <p>
+ * The potential energy is summed from {@link Bodies#potential}, which the pull pass fills in as it goes, so it is
+ * that of the positions the last pulls were computed at. Bodies that were not pulled, such as sleeping ones, or those
+ * off their tick with {@link Engine.Integrator#BLOCK block timesteps}, keep their last potential. The rest is a
+ * single O(n) sum over the bodies per step.
+ * <p>
+ * Samples are kept column by column in primitive arrays, so that {@link #record(long, Bodies, long, long)} does not
+ * allocate. The engine thread records, and any thread may read.
+ */
+final class Diagnostics {
+
+    private final int capacity;
+
+    private final long[] step;
+
+    private final double[] kineticEnergy;
+
+    private final double[] potentialEnergy;
+
+    private final double[] momentumX;
+
+    private final double[] momentumY;
+
+    private final double[] momentumZ;
+
+    private final double[] angularX;
+
+    private final double[] angularY;
+
+    private final double[] angularZ;
+
+    private final double[] centreX;
+
+    private final double[] centreY;
+
+    private final double[] centreZ;
+
+    private final long[] collisions;
+
+    private final long[] wallHits;
+
+    private long lastCollisions;
+
+    private long lastWallHits;
+
+    private int next;
+
+    private int size;
+
+    /**
+     * @param capacity Steps to keep
+     */
+    Diagnostics(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        step = new long[capacity];
+        kineticEnergy = new double[capacity];
+        potentialEnergy = new double[capacity];
+        momentumX = new double[capacity];
+        momentumY = new double[capacity];
+        momentumZ = new double[capacity];
+        angularX = new double[capacity];
+        angularY = new double[capacity];
+        angularZ = new double[capacity];
+        centreX = new double[capacity];
+        centreY = new double[capacity];
+        centreZ = new double[capacity];
+        collisions = new long[capacity];
+        wallHits = new long[capacity];
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @param step       Step just completed
+     * @param bodies     Bodies at the end of it
+     * @param collisions Collisions so far
+     * @param wallHits   Wall hits so far
+     */
+    synchronized void record(long step, Bodies bodies, long collisions, long wallHits) {
+        double kinetic = 0d;
+        double potential = 0d;
+        double px = 0d;
+        double py = 0d;
+        double pz = 0d;
+        double lx = 0d;
+        double ly = 0d;
+        double lz = 0d;
+        double cx = 0d;
+        double cy = 0d;
+        double cz = 0d;
+        for (int i = 0; i < bodies.count; i++) {
+            double x = bodies.x[i];
+            double y = bodies.y[i];
+            double z = bodies.z[i];
+            double vx = bodies.vx[i];
+            double vy = bodies.vy[i];
+            double vz = bodies.vz[i];
+            kinetic += vx * vx + vy * vy + vz * vz;
+            potential += bodies.potential[i];
+            px += vx;
+            py += vy;
+            pz += vz;
+            lx += y * vz - z * vy;
+            ly += z * vx - x * vz;
+            lz += x * vy - y * vx;
+            cx += x;
+            cy += y;
+            cz += z;
+        }
+        int count = Math.max(1, bodies.count);
+        int slot = next;
+        this.step[slot] = step;
+        kineticEnergy[slot] = kinetic / 2;
+        potentialEnergy[slot] = potential;
+        momentumX[slot] = px;
+        momentumY[slot] = py;
+        momentumZ[slot] = pz;
+        angularX[slot] = lx;
+        angularY[slot] = ly;
+        angularZ[slot] = lz;
+        centreX[slot] = cx / count;
+        centreY[slot] = cy / count;
+        centreZ[slot] = cz / count;
+        this.collisions[slot] = collisions - lastCollisions;
+        this.wallHits[slot] = wallHits - lastWallHits;
+        lastCollisions = collisions;
+        lastWallHits = wallHits;
+        next = (slot + 1) % capacity;
+        size = Math.min(capacity, size + 1);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return The last sample, or null if none were recorded yet
+     */
+    synchronized Sample latest() {
+        return size == 0 ? null : sample((next + capacity - 1) % capacity);
+    }
+
+    /**
+     * @return The samples kept, oldest first
+     */
+    synchronized List<Sample> series() {
+        List<Sample> series = new ArrayList<>(size);
+        for (int k = 0; k < size; k++) {
+            series.add(sample((next + capacity - size + k) % capacity));
+        }
+        return series;
+    }
+
+    synchronized void clear() {
+        next = 0;
+        size = 0;
+    }
+
+    /**
+     * Called every frame for the HUD, so it builds only the two samples it needs, and formats them outside the lock.
+     *
+     * @return The last sample and the drift in total energy over the series, as a text table for the HUD and the
+     *     console
+     */
+    String table() {
+        Sample first;
+        Sample last;
+        synchronized (this) {
+            if (size == 0) {
+                return "";
+            }
+            first = sample((next + capacity - size) % capacity);
+            last = sample((next + capacity - 1) % capacity);
+        }
+        return String.format(
+            "%-18s %8d%n" +
+            "%-18s %8.4g%n" +
+            "%-18s %8.4g%n" +
+            "%-18s %8.4g%n" +
+            "%-18s %8.3g%n" +
+            "%-18s %8.4g%n" +
+            "%-18s %8.4g%n" +
+            "%-18s %s%n" +
+            "%-18s %8d%n" +
+            "%-18s %8d%n",
+            "step", last.step(),
+            "kinetic energy", last.kineticEnergy(),
+            "potential energy", last.potentialEnergy(),
+            "total energy", last.energy(),
+            "energy drift", relative(last.energy() - first.energy(), first.energy()),
+            "momentum", last.momentum().length(),
+            "angular momentum", last.angularMomentum().length(),
+            "centre of mass", format(last.centreOfMass()),
+            "collisions/step", last.collisions(),
+            "wall hits/step", last.wallHits()
+        );
+    }
+
+    void writeCsv(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write(
+                "step,kinetic energy,potential energy,total energy," +
+                "momentum x,momentum y,momentum z,angular momentum x,angular momentum y,angular momentum z," +
+                "centre x,centre y,centre z,collisions,wall hits"
+            );
+            writer.newLine();
+            for (Sample sample : series()) {
+                writer.write(String.format(
+                    Locale.ROOT,
+                    "%d,%.9g,%.9g,%.9g,%.9g,%.9g,%.9g,%.9g,%.9g,%.9g,%.9g,%.9g,%.9g,%d,%d",
+                    sample.step(),
+                    sample.kineticEnergy(),
+                    sample.potentialEnergy(),
+                    sample.energy(),
+                    sample.momentum().x(),
+                    sample.momentum().y(),
+                    sample.momentum().z(),
+                    sample.angularMomentum().x(),
+                    sample.angularMomentum().y(),
+                    sample.angularMomentum().z(),
+                    sample.centreOfMass().x(),
+                    sample.centreOfMass().y(),
+                    sample.centreOfMass().z(),
+                    sample.collisions(),
+                    sample.wallHits()
+                ));
+                writer.newLine();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + size() + "/" + capacity + "]";
+    }
+
+    private Sample sample(int slot) {
+        return new Sample(
+            step[slot],
+            kineticEnergy[slot],
+            potentialEnergy[slot],
+            new Vector(momentumX[slot], momentumY[slot], momentumZ[slot]),
+            new Vector(angularX[slot], angularY[slot], angularZ[slot]),
+            new Vector(centreX[slot], centreY[slot], centreZ[slot]),
+            collisions[slot],
+            wallHits[slot]
+        );
+    }
+
+    private static double relative(double difference, double base) {
+        return base == 0d ? difference : difference / Math.abs(base);
+    }
+
+    private static String format(Vector v) {
+        return String.format("%.1f, %.1f, %.1f", v.x(), v.y(), v.z());
+    }
+
+    /**
+     * The state at the end of a step.
+     *
+     * @param step            Step
+     * @param kineticEnergy   Sum of half the squared speeds
+     * @param potentialEnergy Energy of the mutual pulls and the gravity well
+     * @param momentum        Sum of the velocities
+     * @param angularMomentum Sum of position cross velocity, about the centre of the world
+     * @param centreOfMass    Mean position
+     * @param collisions      Collisions in the step
+     * @param wallHits        Bodies bounced off a wall in the step
+     */
+    record Sample(
+        long step,
+        double kineticEnergy,
+        double potentialEnergy,
+        Vector momentum,
+        Vector angularMomentum,
+        Vector centreOfMass,
+        long collisions,
+        long wallHits
+    ) {
+
+        double energy() {
+            return kineticEnergy + potentialEnergy;
+        }
+    }
+}
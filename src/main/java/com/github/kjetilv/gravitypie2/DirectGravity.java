@@ -0,0 +1,90 @@
+package com.github.kjetilv.gravitypie2;
+
+/**
+ * The exact O(n²) sum over all other bodies. Slow, but the reference the approximations are measured against.
+ */
+final class DirectGravity implements Gravity {
+
+    @Override
+    public void pull(Bodies bodies, int i, double g) {
+        sum(bodies, bodies.count, i, g);
+    }
+
+    @Override
+    public void pullWithPotential(Bodies bodies, int i, double g) {
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] z = bodies.z;
+        double px = x[i];
+        double py = y[i];
+        double pz = z[i];
+        double pullX = 0d;
+        double pullY = 0d;
+        double pullZ = 0d;
+        double logs = 0d;
+        for (int j = 0; j < bodies.count; j++) {
+            if (j != i) {
+                double dx = x[j] - px;
+                double dy = y[j] - py;
+                double dz = z[j] - pz;
+                double distSquared = dx * dx + dy * dy + dz * dz;
+                double force = g / distSquared;
+                pullX += dx * force;
+                pullY += dy * force;
+                pullZ += dz * force;
+                logs += Math.log(distSquared);
+            }
+        }
+        bodies.ax[i] = pullX;
+        bodies.ay[i] = pullY;
+        bodies.az[i] = pullZ;
+        bodies.potential[i] = g * logs / 4;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[]";
+    }
+
+    /**
+     * Sets the accelerations of body i to the pull of the others among the first count bodies, for stores that have
+     * room for more bodies than they hold.
+     *
+     * @param bodies Bodies
+     * @param count  Bodies to sum over
+     * @param i      Body pulled
+     * @param g      Gravitational constant times the weight of body i
+     */
+    static void sum(Bodies bodies, int count, int i, double g) {
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] z = bodies.z;
+        double px = x[i];
+        double py = y[i];
+        double pz = z[i];
+        double pullX = 0d;
+        double pullY = 0d;
+        double pullZ = 0d;
+        for (int j = 0; j < i; j++) {
+            double dx = x[j] - px;
+            double dy = y[j] - py;
+            double dz = z[j] - pz;
+            double force = g / (dx * dx + dy * dy + dz * dz);
+            pullX += dx * force;
+            pullY += dy * force;
+            pullZ += dz * force;
+        }
+        for (int j = i + 1; j < count; j++) {
+            double dx = x[j] - px;
+            double dy = y[j] - py;
+            double dz = z[j] - pz;
+            double force = g / (dx * dx + dy * dy + dz * dz);
+            pullX += dx * force;
+            pullY += dy * force;
+            pullZ += dz * force;
+        }
+        bodies.ax[i] = pullX;
+        bodies.ay[i] = pullY;
+        bodies.az[i] = pullZ;
+    }
+}
@@ -0,0 +1,524 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * The bodies of one slab of the world, for a {@link DomainWorker}. The world is split into {@link #GRID}³ cells, and
+ * the slabs into runs of whole columns of cells along x. A column is at least as wide as the largest body, so a body
+ * can only touch bodies in its own column and the two next to it.
+ * <p>
+ * A step is the {@link Engine}'s Euler step, with the same collision, pull, integration and wall bounce, over the
+ * bodies this domain owns. Before the step, each domain hands out:
+ * <ul>
+ *     <li>A summary of each of its cells: body count and position sum</li>
+ *     <li>The halo: its bodies in the columns at its edges, for the neighbouring domains</li>
+ * </ul>
+ * Each domain then resolves collisions with the halo bodies included, takes the pull of its own and the halo bodies
+ * directly, and the pull of every other cell from its summary, as if all of its bodies were at their mean position.
+ * After the step, bodies that have left the slab migrate to the domain that owns their new column.
+ * <p>
+ * Bodies are identified by their index in {@link Engine#res(int)}, which also gives their size and weight, so only the
+ * index and the motion go over the wire.
+ */
+final class Domain {
+
+    private final int index;
+
+    private final int domains;
+
+    private final int total;
+
+    private final World world;
+
+    private final Preset knobs;
+
+    private final int firstColumn;
+
+    private final int endColumn;
+
+    private final double xBound;
+
+    private final double yBound;
+
+    private final double zBound;
+
+    private final double cellX;
+
+    private final double cellY;
+
+    private final double cellZ;
+
+    private final int[] cellCount = new int[CELLS];
+
+    private final double[] cellSumX = new double[CELLS];
+
+    private final double[] cellSumY = new double[CELLS];
+
+    private final double[] cellSumZ = new double[CELLS];
+
+    private final SpatialHash.Pairs collisions = this::handleCollision;
+
+    private SpatialHash spatialHash;
+
+    private int own;
+
+    private int size;
+
+    private int[] id;
+
+    private Bodies bodies;
+
+    private int remoteCells;
+
+    private final int[] remoteCount = new int[CELLS];
+
+    private final double[] remoteX = new double[CELLS];
+
+    private final double[] remoteY = new double[CELLS];
+
+    private final double[] remoteZ = new double[CELLS];
+
+    /**
+     * @param index   This domain
+     * @param domains Domains
+     * @param total   Bodies in all domains
+     * @param world   World
+     * @param knobs   Knobs, fixed for the run
+     */
+    Domain(int index, int domains, int total, World world, Preset knobs) {
+        if (domains < 1 || domains > GRID || index < 0 || index >= domains) {
+            throw new IllegalArgumentException("Invalid domain " + index + " of " + domains + ", at most " + GRID);
+        }
+        this.index = index;
+        this.domains = domains;
+        this.total = total;
+        this.world = Objects.requireNonNull(world, "world");
+        this.knobs = Objects.requireNonNull(knobs, "knobs");
+        this.firstColumn = firstColumn(index, domains);
+        this.endColumn = firstColumn(index + 1, domains);
+        this.xBound = world.xBound();
+        this.yBound = world.yBound();
+        this.zBound = world.zBound();
+        this.cellX = (double) world.sizeX() / GRID;
+        this.cellY = (double) world.sizeY() / GRID;
+        this.cellZ = (double) world.sizeZ() / GRID;
+        double reach = 2 * Engine.RE_RANGE.max();
+        if (cellX < reach) {
+            throw new IllegalArgumentException(world + " too narrow for " + GRID + " columns of at least " + reach);
+        }
+        allocate(INITIAL_CAPACITY);
+    }
+
+    int own() {
+        return own;
+    }
+
+    /**
+     * Keeps the bodies of an {@link Engine#scatter(long)} that fall in this slab.
+     *
+     * @param seed Seed
+     */
+    void scatter(long seed) {
+        Range range = world.spawnRange();
+        size = 0;
+        for (int chunk = 0; chunk < Math.ceilDiv(total, Engine.SCATTER_CHUNK); chunk++) {
+            SplittableRandom random = Engine.chunkRandom(seed, chunk);
+            for (int i = chunk * Engine.SCATTER_CHUNK, end = Math.min(total, i + Engine.SCATTER_CHUNK); i < end; i++) {
+                double px = random.nextDouble(range.min(), range.max());
+                double py = random.nextDouble(range.min(), range.max());
+                double pz = random.nextDouble(range.min(), range.max());
+                if (owns(column(px))) {
+                    add(i, px, py, pz, 0d, 0d, 0d);
+                }
+            }
+        }
+        own = size;
+    }
+
+    /**
+     * @return Count and position sums of the cells with bodies in them
+     */
+    byte[] summaries() {
+        Arrays.fill(cellCount, 0);
+        Arrays.fill(cellSumX, 0d);
+        Arrays.fill(cellSumY, 0d);
+        Arrays.fill(cellSumZ, 0d);
+        for (int i = 0; i < own; i++) {
+            int cell = cell(bodies.x[i], bodies.y[i], bodies.z[i]);
+            cellCount[cell]++;
+            cellSumX[cell] += bodies.x[i];
+            cellSumY[cell] += bodies.y[i];
+            cellSumZ[cell] += bodies.z[i];
+        }
+        return write(out -> {
+            int cells = 0;
+            for (int cell = 0; cell < CELLS; cell++) {
+                if (cellCount[cell] > 0) {
+                    cells++;
+                }
+            }
+            out.writeInt(cells);
+            for (int cell = 0; cell < CELLS; cell++) {
+                if (cellCount[cell] > 0) {
+                    out.writeInt(cell);
+                    out.writeInt(cellCount[cell]);
+                    out.writeDouble(cellSumX[cell]);
+                    out.writeDouble(cellSumY[cell]);
+                    out.writeDouble(cellSumZ[cell]);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param left The left edge, as opposed to the right
+     * @return The bodies in the edge column, for the neighbour on that side
+     */
+    byte[] halo(boolean left) {
+        int edge = left ? firstColumn : endColumn - 1;
+        boolean neighbour = left ? index > 0 : index < domains - 1;
+        return write(out -> {
+            int count = 0;
+            for (int i = 0; i < own; i++) {
+                if (neighbour && column(bodies.x[i]) == edge) {
+                    count++;
+                }
+            }
+            out.writeInt(count);
+            for (int i = 0; i < own; i++) {
+                if (neighbour && column(bodies.x[i]) == edge) {
+                    writeBody(out, i);
+                }
+            }
+        });
+    }
+
+    /**
+     * Takes in what the other domains handed out before the step.
+     *
+     * @param summaries Summaries of the other domains
+     * @param halos     Halos of the neighbouring domains
+     */
+    void exchange(List<byte[]> summaries, List<byte[]> halos) {
+        remoteCells = 0;
+        for (byte[] block : summaries) {
+            read(block, in -> {
+                for (int n = in.readInt(); n > 0; n--) {
+                    int cell = in.readInt();
+                    int count = in.readInt();
+                    double sumX = in.readDouble();
+                    double sumY = in.readDouble();
+                    double sumZ = in.readDouble();
+                    int column = cell % GRID;
+                    if (column != firstColumn - 1 && column != endColumn) {
+                        remoteCount[remoteCells] = count;
+                        remoteX[remoteCells] = sumX / count;
+                        remoteY[remoteCells] = sumY / count;
+                        remoteZ[remoteCells] = sumZ / count;
+                        remoteCells++;
+                    }
+                }
+            });
+        }
+        size = own;
+        for (byte[] block : halos) {
+            readBodies(block);
+        }
+    }
+
+    void step() {
+        if (spatialHash == null || spatialHash.capacity() < size) {
+            spatialHash = new SpatialHash(2 * Engine.RE_RANGE.max(), id.length);
+        }
+        spatialHash.build(bodies.x, bodies.y, bodies.z, size);
+        spatialHash.forEachPair(collisions);
+        for (int i = 0; i < own; i++) {
+            bodies.vx[i] += bodies.ix[i];
+            bodies.vy[i] += bodies.iy[i];
+            bodies.vz[i] += bodies.iz[i];
+        }
+        Arrays.fill(bodies.ix, 0, size, 0d);
+        Arrays.fill(bodies.iy, 0, size, 0d);
+        Arrays.fill(bodies.iz, 0, size, 0d);
+        for (int i = 0; i < own; i++) {
+            pull(i);
+        }
+        double brake = 1 - knobs.airBrake();
+        for (int i = 0; i < own; i++) {
+            bodies.vx[i] = (bodies.vx[i] + bodies.ax[i]) * brake;
+            bodies.vy[i] = (bodies.vy[i] + bodies.ay[i]) * brake;
+            bodies.vz[i] = (bodies.vz[i] + bodies.az[i]) * brake;
+            bodies.x[i] += bodies.vx[i];
+            bodies.y[i] += bodies.vy[i];
+            bodies.z[i] += bodies.vz[i];
+        }
+        for (int i = 0; i < own; i++) {
+            bounce(i);
+        }
+        size = own;
+    }
+
+    /**
+     * Removes the bodies that have left the slab.
+     *
+     * @return The bodies for each domain, empty for this one
+     */
+    byte[][] migrants() {
+        int[] owner = new int[own];
+        int[] counts = new int[domains];
+        for (int i = 0; i < own; i++) {
+            owner[i] = owner(column(bodies.x[i]), domains);
+            counts[owner[i]]++;
+        }
+        byte[][] blocks = new byte[domains][];
+        for (int domain = 0; domain < domains; domain++) {
+            int target = domain;
+            int count = domain == index ? 0 : counts[domain];
+            blocks[domain] = write(out -> {
+                out.writeInt(count);
+                for (int i = 0; count > 0 && i < own; i++) {
+                    if (owner[i] == target) {
+                        writeBody(out, i);
+                    }
+                }
+            });
+        }
+        int kept = 0;
+        for (int i = 0; i < own; i++) {
+            if (owner[i] == index) {
+                move(i, kept++);
+            }
+        }
+        own = size = kept;
+        return blocks;
+    }
+
+    /**
+     * @param block Bodies migrating to this domain
+     */
+    void arrive(byte[] block) {
+        size = own;
+        readBodies(block);
+        own = size;
+    }
+
+    /**
+     * @return Index, position, velocity and acceleration of each body
+     */
+    byte[] state() {
+        return write(out -> {
+            out.writeInt(own);
+            for (int i = 0; i < own; i++) {
+                out.writeInt(id[i]);
+                out.writeDouble(bodies.x[i]);
+                out.writeDouble(bodies.y[i]);
+                out.writeDouble(bodies.z[i]);
+                out.writeDouble(bodies.vx[i]);
+                out.writeDouble(bodies.vy[i]);
+                out.writeDouble(bodies.vz[i]);
+                out.writeDouble(bodies.ax[i]);
+                out.writeDouble(bodies.ay[i]);
+                out.writeDouble(bodies.az[i]);
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + index + "/" + domains + ": columns " + firstColumn + "-" +
+               (endColumn - 1) + ", " + own + " bodies]";
+    }
+
+    /**
+     * The direct pull of the bodies here and in the halo, then the pull of each other cell from its mean position.
+     */
+    private void pull(int i) {
+        Bodies b = bodies;
+        double px = b.x[i];
+        double py = b.y[i];
+        double pz = b.z[i];
+        double g = knobs.gravConstant() * b.weight[i];
+        DirectGravity.sum(b, size, i, g);
+        double pullX = b.ax[i];
+        double pullY = b.ay[i];
+        double pullZ = b.az[i];
+        for (int c = 0; c < remoteCells; c++) {
+            double dx = remoteX[c] - px;
+            double dy = remoteY[c] - py;
+            double dz = remoteZ[c] - pz;
+            double force = g * remoteCount[c] / (dx * dx + dy * dy + dz * dz);
+            pullX += dx * force;
+            pullY += dy * force;
+            pullZ += dz * force;
+        }
+        b.ax[i] = pullX;
+        b.ay[i] = pullY + (py + yBound) * Walls.groundPull(knobs.gravityWell(), b.weight[i]);
+        b.az[i] = pullZ;
+    }
+
+    /**
+     * As in the {@link Engine}, without sleepers. Halo bodies are moved too, but only for the sake of the pairs
+     * resolved after them.
+     */
+    private void handleCollision(int i, int j) {
+        NarrowPhase.collide(bodies, i, j, 1 - knobs.collisionBrake(), true, true);
+    }
+
+    private void bounce(int i) {
+        double r = bodies.radius[i];
+        double px = bodies.x[i];
+        double py = bodies.y[i];
+        double pz = bodies.z[i];
+        if (Walls.outside(px, r, xBound) || Walls.outside(py, r, yBound) || Walls.outside(pz, r, zBound)) {
+            double brake = 1 - knobs.wallBrake();
+            bodies.vx[i] = Walls.velocity(px, bodies.vx[i], r, xBound) * brake;
+            bodies.vy[i] = Walls.velocity(py, bodies.vy[i], r, yBound) * brake;
+            bodies.vz[i] = Walls.velocity(pz, bodies.vz[i], r, zBound) * brake;
+            bodies.x[i] = Walls.position(px, r, xBound);
+            bodies.y[i] = Walls.position(py, r, yBound);
+            bodies.z[i] = Walls.position(pz, r, zBound);
+        }
+    }
+
+    private boolean owns(int column) {
+        return column >= firstColumn && column < endColumn;
+    }
+
+    private int column(double px) {
+        return Math.clamp((long) Math.floor((px + xBound) / cellX), 0, GRID - 1);
+    }
+
+    private int cell(double px, double py, double pz) {
+        int cy = Math.clamp((long) Math.floor((py + yBound) / cellY), 0, GRID - 1);
+        int cz = Math.clamp((long) Math.floor((pz + zBound) / cellZ), 0, GRID - 1);
+        return column(px) + GRID * (cy + GRID * cz);
+    }
+
+    private void add(int body, double px, double py, double pz, double pvx, double pvy, double pvz) {
+        if (size == id.length) {
+            allocate(size * 2);
+        }
+        Re re = Engine.re(body, total);
+        id[size] = body;
+        bodies.x[size] = px;
+        bodies.y[size] = py;
+        bodies.z[size] = pz;
+        bodies.vx[size] = pvx;
+        bodies.vy[size] = pvy;
+        bodies.vz[size] = pvz;
+        bodies.ax[size] = 0d;
+        bodies.ay[size] = 0d;
+        bodies.az[size] = 0d;
+        bodies.ix[size] = 0d;
+        bodies.iy[size] = 0d;
+        bodies.iz[size] = 0d;
+        bodies.set(size, re);
+        size++;
+    }
+
+    private void move(int from, int to) {
+        if (from != to) {
+            id[to] = id[from];
+            bodies.x[to] = bodies.x[from];
+            bodies.y[to] = bodies.y[from];
+            bodies.z[to] = bodies.z[from];
+            bodies.vx[to] = bodies.vx[from];
+            bodies.vy[to] = bodies.vy[from];
+            bodies.vz[to] = bodies.vz[from];
+            bodies.ax[to] = bodies.ax[from];
+            bodies.ay[to] = bodies.ay[from];
+            bodies.az[to] = bodies.az[from];
+            bodies.radius[to] = bodies.radius[from];
+            bodies.weight[to] = bodies.weight[from];
+            bodies.mass[to] = bodies.mass[from];
+            bodies.inverseMass[to] = bodies.inverseMass[from];
+        }
+    }
+
+    private void allocate(int capacity) {
+        id = id == null ? new int[capacity] : Arrays.copyOf(id, capacity);
+        bodies = bodies == null ? new Bodies(capacity) : bodies.grow(capacity, size);
+    }
+
+    private void writeBody(DataOutputStream out, int i) throws IOException {
+        out.writeInt(id[i]);
+        out.writeDouble(bodies.x[i]);
+        out.writeDouble(bodies.y[i]);
+        out.writeDouble(bodies.z[i]);
+        out.writeDouble(bodies.vx[i]);
+        out.writeDouble(bodies.vy[i]);
+        out.writeDouble(bodies.vz[i]);
+    }
+
+    private void readBodies(byte[] block) {
+        read(block, in -> {
+            for (int n = in.readInt(); n > 0; n--) {
+                add(
+                    in.readInt(),
+                    in.readDouble(),
+                    in.readDouble(),
+                    in.readDouble(),
+                    in.readDouble(),
+                    in.readDouble(),
+                    in.readDouble()
+                );
+            }
+        });
+    }
+
+    /**
+     * Cells along each axis.
+     */
+    static final int GRID = 16;
+
+    private static final int CELLS = GRID * GRID * GRID;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * @param index   Domain
+     * @param domains Domains
+     * @return The first column of the domain, or {@link #GRID} for the domain after the last
+     */
+    static int firstColumn(int index, int domains) {
+        return index * GRID / domains;
+    }
+
+    static int owner(int column, int domains) {
+        int domain = domains - 1;
+        while (firstColumn(domain, domains) > column) {
+            domain--;
+        }
+        return domain;
+    }
+
+    private static byte[] write(Encoder encoder) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            encoder.encode(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void read(byte[] block, Decoder decoder) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(block))) {
+            decoder.decode(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+
+        void encode(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Decoder {
+
+        void decode(DataInputStream in) throws IOException;
+    }
+}
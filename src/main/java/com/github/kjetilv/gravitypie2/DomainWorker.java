@@ -0,0 +1,70 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * A worker process of a {@link Cluster}, stepping one {@link Domain}. Connects to the cluster, says which domain it
+ * is, and then follows the cluster step by step. Everything else comes from the cluster. Options:
+ * <pre>
+ * --port P            Port of the cluster, on the loopback address
+ * --domain D          Domain
+ * </pre>
+ */
+public final class DomainWorker {
+
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        int port = options.integer("port", 0);
+        int index = options.integer("domain", 0);
+        try (
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))
+        ) {
+            socket.setTcpNoDelay(true);
+            out.writeInt(index);
+            out.flush();
+            run(index, in, out);
+        }
+    }
+
+    private DomainWorker() {
+    }
+
+    private static void run(int index, DataInputStream in, DataOutputStream out) throws IOException {
+        int domains = in.readInt();
+        int count = in.readInt();
+        World world = new World(in.readInt(), in.readInt(), in.readInt());
+        long seed = in.readLong();
+        Preset knobs = new Preset(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+        int steps = in.readInt();
+        boolean firstState = in.readBoolean();
+
+        Domain domain = new Domain(index, domains, count, world, knobs);
+        domain.scatter(seed);
+        for (int step = 1; step <= steps; step++) {
+            Cluster.writeBlock(out, domain.summaries());
+            Cluster.writeBlock(out, domain.halo(true));
+            Cluster.writeBlock(out, domain.halo(false));
+            out.flush();
+            List<byte[]> summaries = Cluster.readBlocks(in, domains - 1);
+            List<byte[]> halos = Cluster.readBlocks(in, 2);
+            domain.exchange(summaries, halos);
+
+            domain.step();
+            byte[] state = step == steps || step == 1 && firstState ? domain.state() : null;
+
+            for (byte[] block : domain.migrants()) {
+                Cluster.writeBlock(out, block);
+            }
+            out.flush();
+            for (byte[] block : Cluster.readBlocks(in, domains)) {
+                domain.arrive(block);
+            }
+            if (state != null) {
+                Cluster.writeBlock(out, state);
+                out.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,1050 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * The physics of a world full of bodies, free of any display. One {@link #step()} advances the world by
+ * {@link Settings#timestep()}, resolving collisions, applying the collision impulses and pulls, integrating velocities
+ * and positions, and bouncing bodies off the walls. How velocities and positions are integrated is up to the
+ * {@link Integrator}.
+ */
+final class Engine implements AutoCloseable {
+
+    private final World world;
+
+    private final Re[] res;
+
+    private final Bodies bodies;
+
+    private final int count;
+
+    private final int xBound;
+
+    private final int yBound;
+
+    private final int zBound;
+
+    private final double theta;
+
+    private volatile Gravity.Solver solver;
+
+    private volatile Gravity gravity;
+
+    private final boolean broadPhase;
+
+    private final SpatialHash spatialHash;
+
+    private final SpatialHash.Pairs collisions = this::handleCollision;
+
+    private final SpatialHash.Pairs gatherContact = this::gatherContact;
+
+    private final Contacts contacts;
+
+    private final AtomicLong contactGauge;
+
+    private final AtomicLong colourGauge;
+
+    /**
+     * Collisions in the current {@link #collide()}, counted from any thread.
+     */
+    private final LongAdder collisionCount = new LongAdder();
+
+    private final AtomicLong collisionGauge;
+
+    /**
+     * Wall hits in the current {@link #bounce()}, counted from any thread.
+     */
+    private final LongAdder wallHitCount = new LongAdder();
+
+    private final AtomicLong wallHitGauge;
+
+    /**
+     * Null unless {@link Settings#diagnostics()} asks for them.
+     */
+    private final Diagnostics diagnostics;
+
+    private final Parallel parallel;
+
+    private final IntConsumer applyCollisionImpulse = this::applyCollisionImpulse;
+
+    private final IntConsumer updatePulls = this::updatePulls;
+
+    private final IntConsumer updateVelocity = this::updateVelocity;
+
+    private final IntConsumer handleWallBounce = this::handleWallBounce;
+
+    private final IntConsumer kickDrift = this::kickDrift;
+
+    private final IntConsumer kick = this::kick;
+
+    private final IntConsumer blockKickDrift = this::blockKickDrift;
+
+    private final IntConsumer blockPullKick = this::blockPullKick;
+
+    private final Integrator integrator;
+
+    private final double timestep;
+
+    private final double accuracy;
+
+    private final AtomicLong substeps;
+
+    private final AtomicLong forceEvaluations;
+
+    private final int sleepFrames;
+
+    private final int[] quiet;
+
+    private final boolean[] moving;
+
+    private final double[] anchorX;
+
+    private final double[] anchorY;
+
+    private final double[] anchorZ;
+
+    private final AtomicLong asleepGauge;
+
+    private final AtomicInteger sleeping = new AtomicInteger();
+
+    private long knobsVersion;
+
+    private final int[] rung;
+
+    private final int[] active;
+
+    private final double[] rungBrake = new double[MAX_RUNG + 1];
+
+    private int activeCount;
+
+    private int tick;
+
+    private int ticks;
+
+    private double tickDt;
+
+    private double dt;
+
+    private double brake;
+
+    private boolean accelerated;
+
+    private Gravity stepGravity;
+
+    private final Metrics metrics;
+
+    private long steps;
+
+    private final Slidouble gravConstant = new Slidouble("gravConstant");
+
+    private final Slidouble airBrake = new Slidouble("airBrake");
+
+    private final Slidouble collisionBrake = new Slidouble("collisionBrake");
+
+    private final Slidouble wallBrake = new Slidouble("wallBrake");
+
+    private final Slidouble gravityWell = new Slidouble("gravityWell");
+
+    private final List<Slidouble> slidoubles = List.of(
+        gravConstant,
+        airBrake,
+        collisionBrake,
+        wallBrake,
+        gravityWell
+    );
+
+    Engine(World world, Re[] res, Settings settings) {
+        this(world, res, settings, new Metrics());
+    }
+
+    Engine(World world, Re[] res, Settings settings, Metrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+        this.world = Objects.requireNonNull(world, "world");
+        this.res = Objects.requireNonNull(res, "res");
+        this.bodies = new Bodies(res);
+        this.count = bodies.count;
+
+        this.xBound = world.xBound();
+        this.yBound = world.yBound();
+        this.zBound = world.zBound();
+
+        this.theta = settings.theta();
+        this.solver = settings.solver();
+        this.gravity = solver.create(theta);
+        this.broadPhase = settings.broadPhase();
+        this.spatialHash = new SpatialHash(2 * RE_RANGE.max(), count);
+        this.contacts = settings.contactSolver() == ContactSolver.COLOURED
+            ? new Contacts(count, collisions)
+            : null;
+        this.contactGauge = metrics.gauge("contacts");
+        this.colourGauge = metrics.gauge("contact colours");
+        this.collisionGauge = metrics.gauge("collisions");
+        this.wallHitGauge = metrics.gauge("wall hits");
+        this.diagnostics = settings.diagnostics() > 0 ? new Diagnostics(settings.diagnostics()) : null;
+        this.parallel = new Parallel(settings.threads());
+        this.integrator = settings.integrator();
+        this.timestep = settings.timestep();
+        this.accuracy = settings.accuracy();
+        this.substeps = metrics.gauge("substeps");
+        this.forceEvaluations = metrics.gauge("force evaluations");
+        this.rung = new int[count];
+        this.sleepFrames = settings.sleepFrames();
+        this.quiet = new int[count];
+        this.moving = new boolean[count];
+        this.anchorX = new double[count];
+        this.anchorY = new double[count];
+        this.anchorZ = new double[count];
+        this.asleepGauge = metrics.gauge("asleep");
+        this.active = new int[count];
+    }
+
+    World world() {
+        return world;
+    }
+
+    Re[] res() {
+        return res;
+    }
+
+    Bodies bodies() {
+        return bodies;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long steps() {
+        return steps;
+    }
+
+    void steps(long steps) {
+        this.steps = steps;
+    }
+
+    Metrics metrics() {
+        return metrics;
+    }
+
+    Slidouble gravConstant() {
+        return gravConstant;
+    }
+
+    Slidouble airBrake() {
+        return airBrake;
+    }
+
+    Slidouble collisionBrake() {
+        return collisionBrake;
+    }
+
+    Slidouble wallBrake() {
+        return wallBrake;
+    }
+
+    Slidouble gravityWell() {
+        return gravityWell;
+    }
+
+    List<Slidouble> slidoubles() {
+        return slidoubles;
+    }
+
+    /**
+     * @return The current values of the five knobs
+     */
+    Preset knobs() {
+        return new Preset(
+            gravConstant.value(),
+            airBrake.value(),
+            collisionBrake.value(),
+            wallBrake.value(),
+            gravityWell.value()
+        );
+    }
+
+    void apply(Preset preset) {
+        gravConstant.value(preset.gravConstant());
+        airBrake.value(preset.airBrake());
+        collisionBrake.value(preset.collisionBrake());
+        wallBrake.value(preset.wallBrake());
+        gravityWell.value(preset.gravityWell());
+    }
+
+    /**
+     * Scatters the bodies uniformly over the {@link World#spawnRange() spawn range}. The bodies are split into chunks
+     * of {@link #SCATTER_CHUNK} that each draw from their own {@link SplittableRandom}, seeded from the seed and the
+     * chunk index, so the same seed gives the same world for any thread count.
+     *
+     * @param seed Seed
+     */
+    void scatter(long seed) {
+        Range range = world.spawnRange();
+        parallel.forEach(Math.ceilDiv(count, SCATTER_CHUNK), chunk -> {
+            SplittableRandom random = chunkRandom(seed, chunk);
+            for (int i = chunk * SCATTER_CHUNK, end = Math.min(count, i + SCATTER_CHUNK); i < end; i++) {
+                bodies.x[i] = random.nextDouble(range.min(), range.max());
+                bodies.y[i] = random.nextDouble(range.min(), range.max());
+                bodies.z[i] = random.nextDouble(range.min(), range.max());
+            }
+        });
+        positionsChanged();
+    }
+
+    /**
+     * Call when the positions have been set from outside, so that the accelerations are recomputed before they are
+     * next used.
+     */
+    void positionsChanged() {
+        accelerated = false;
+        wakeAll();
+        if (diagnostics != null) {
+            diagnostics.clear();
+        }
+    }
+
+    int sleeping() {
+        return sleeping.get();
+    }
+
+    /**
+     * @return Collisions resolved since the engine was created
+     */
+    long collisions() {
+        return collisionGauge.get();
+    }
+
+    /**
+     * @return Pulls computed for single bodies since the engine was created
+     */
+    long forceEvaluations() {
+        return forceEvaluations.get();
+    }
+
+    /**
+     * @return Bodies bounced off a wall since the engine was created
+     */
+    long wallHits() {
+        return wallHitGauge.get();
+    }
+
+    /**
+     * @return The diagnostics, or null if {@link Settings#diagnostics()} is 0
+     */
+    Diagnostics diagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Switches to the next gravity solver. May be called from any thread, takes effect from the next step.
+     *
+     * @return The new solver
+     */
+    Gravity nextGravity() {
+        Gravity.Solver next = solver.next();
+        solver = next;
+        gravity = next.create(theta);
+        return gravity;
+    }
+
+    void step() {
+        long allocated = metrics.allocatedBytes();
+        long start = metrics.start();
+        if (sleepFrames > 0) {
+            long version = knobsVersion();
+            if (version != knobsVersion) {
+                knobsVersion = version;
+                wakeAll();
+            }
+        }
+        switch (integrator) {
+            case EULER -> euler();
+            case LEAPFROG -> leapfrog();
+            case BLOCK -> block();
+        }
+        if (sleepFrames > 0) {
+            settle();
+        }
+        steps++;
+        if (diagnostics != null) {
+            diagnostics.record(steps, bodies, collisions(), wallHits());
+        }
+        metrics.lap(Phase.STEP, start);
+        metrics.allocated(Phase.STEP, allocated);
+        metrics.step(steps);
+    }
+
+    void collide() {
+        SpatialHash.Pairs pairs = contacts == null ? collisions : gatherContact;
+        if (contacts != null) {
+            contacts.clear();
+        }
+        if (broadPhase) {
+            spatialHash.build(bodies);
+            spatialHash.forEachPair(pairs);
+        } else {
+            for (int i = 0; i < count; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    pairs.pair(i, j);
+                }
+            }
+        }
+        if (contacts != null) {
+            contacts.resolve(parallel);
+            contactGauge.set(contacts.size());
+            colourGauge.set(contacts.colours());
+        }
+        collisionGauge.addAndGet(collisionCount.sumThenReset());
+    }
+
+    void applyCollisionImpulses() {
+        parallel.forEach(count, applyCollisionImpulse);
+    }
+
+    void pull() {
+        stepGravity = gravity;
+        stepGravity.prepare(bodies);
+        parallel.forEach(count, updatePulls);
+        forceEvaluations.addAndGet(count - sleeping.get());
+    }
+
+    void integrate() {
+        dt = timestep;
+        brake = Math.pow(airBrake.mirrorValue(), timestep);
+        parallel.forEach(count, updateVelocity);
+    }
+
+    void bounce() {
+        parallel.forEach(count, handleWallBounce);
+        wallHitGauge.addAndGet(wallHitCount.sumThenReset());
+    }
+
+    @Override
+    public void close() {
+        parallel.close();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() +
+               "[" + count + " bodies in " + world + ", " + gravity + ", " + integrator + " dt=" + timestep + ", " +
+               parallel + "]";
+    }
+
+    private void euler() {
+        long time = metrics.start();
+        collide();
+        time = metrics.lap(Phase.COLLISION, time);
+        applyCollisionImpulses();
+        time = metrics.lap(Phase.COLLISION_IMPULSE, time);
+        pull();
+        time = metrics.lap(Phase.PULLS, time);
+        integrate();
+        time = metrics.lap(Phase.INTEGRATION, time);
+        bounce();
+        metrics.lap(Phase.WALL_BOUNCE, time);
+        substeps.incrementAndGet();
+    }
+
+    /**
+     * Kick-drift-kick leapfrog, in as many substeps as the {@link #adaptiveTimestep() adaptive timestep} calls for.
+     * The closing kick of a substep uses the accelerations at its end, which are kept for the opening kick of the
+     * next one. Wall bounces and collisions act on the drifted positions as instantaneous impulses, before the pulls
+     * are computed, so that nothing moves the bodies between the pulls and the next opening kick.
+     */
+    private void leapfrog() {
+        double remaining = timestep;
+        for (int substep = 1; remaining > 0d; substep++) {
+            long time = metrics.start();
+            if (!accelerated) {
+                pull();
+                time = metrics.lap(Phase.PULLS, time);
+                accelerated = true;
+            }
+            dt = substep == MAX_SUBSTEPS ? remaining : Math.min(remaining, adaptiveTimestep());
+            if (dt >= remaining * (1d - TIMESTEP_SLACK)) {
+                dt = remaining;
+            }
+            remaining -= dt;
+
+            parallel.forEach(count, kickDrift);
+            time = metrics.lap(Phase.INTEGRATION, time);
+            bounce();
+            time = metrics.lap(Phase.WALL_BOUNCE, time);
+            collide();
+            time = metrics.lap(Phase.COLLISION, time);
+            applyCollisionImpulses();
+            time = metrics.lap(Phase.COLLISION_IMPULSE, time);
+            pull();
+            time = metrics.lap(Phase.PULLS, time);
+            brake = Math.pow(airBrake.mirrorValue(), dt);
+            parallel.forEach(count, kick);
+            metrics.lap(Phase.INTEGRATION, time);
+            substeps.incrementAndGet();
+        }
+    }
+
+    /**
+     * Leapfrog with power-of-two block timesteps. At the start of the step every body is put on the rung whose
+     * timestep, {@code timestep / 2^rung}, satisfies the {@link #adaptiveTimestep() adaptive criterion} for that body
+     * alone, and the step is divided into ticks of the finest rung's timestep. Every body drifts every tick, so
+     * positions stay in sync for collisions and pulls, but only bodies whose own timestep ends on a tick have their
+     * pulls computed and get their closing kick. Everyone else keeps their last accelerations.
+     * <p>
+     * When a body finishes one of its timesteps it may move to a finer rung, or to a coarser one if the coarser
+     * timestep would start on this tick.
+     */
+    private void block() {
+        long time = metrics.start();
+        if (!accelerated) {
+            pull();
+            time = metrics.lap(Phase.PULLS, time);
+            accelerated = true;
+        }
+        int maxRung = 0;
+        for (int i = 0; i < count; i++) {
+            rung[i] = rung(i, MAX_RUNG);
+            maxRung = Math.max(maxRung, rung[i]);
+        }
+        ticks = 1 << maxRung;
+        tickDt = timestep / ticks;
+        double mirror = airBrake.mirrorValue();
+        for (int r = 0; r <= maxRung; r++) {
+            rungBrake[r] = Math.pow(mirror, timestep / (1 << r));
+        }
+        time = metrics.lap(Phase.INTEGRATION, time);
+
+        for (tick = 0; tick < ticks; tick++) {
+            parallel.forEach(count, blockKickDrift);
+            time = metrics.lap(Phase.INTEGRATION, time);
+            bounce();
+            time = metrics.lap(Phase.WALL_BOUNCE, time);
+            collide();
+            time = metrics.lap(Phase.COLLISION, time);
+            applyCollisionImpulses();
+            time = metrics.lap(Phase.COLLISION_IMPULSE, time);
+
+            activeCount = 0;
+            int end = tick + 1;
+            for (int i = 0; i < count; i++) {
+                if (!bodies.asleep[i] && end % (ticks >> rung[i]) == 0) {
+                    active[activeCount++] = i;
+                }
+            }
+            if (activeCount > 0) {
+                stepGravity = gravity;
+                stepGravity.prepare(bodies);
+                parallel.forEach(activeCount, blockPullKick);
+                forceEvaluations.addAndGet(activeCount);
+            }
+            time = metrics.lap(Phase.PULLS, time);
+            substeps.incrementAndGet();
+        }
+    }
+
+    private void blockKickDrift(int i) {
+        Bodies b = bodies;
+        if (b.asleep[i]) {
+            return;
+        }
+        int period = ticks >> rung[i];
+        if (tick % period == 0) {
+            double halfDt = period * tickDt / 2;
+            b.vx[i] += b.ax[i] * halfDt;
+            b.vy[i] += b.ay[i] * halfDt;
+            b.vz[i] += b.az[i] * halfDt;
+        }
+        b.x[i] += b.vx[i] * tickDt;
+        b.y[i] += b.vy[i] * tickDt;
+        b.z[i] += b.vz[i] * tickDt;
+    }
+
+    private void blockPullKick(int k) {
+        int i = active[k];
+        updatePulls(i);
+        Bodies b = bodies;
+        int r = rung[i];
+        double halfDt = (ticks >> r) * tickDt / 2;
+        double brake = rungBrake[r];
+        b.vx[i] = (b.vx[i] + b.ax[i] * halfDt) * brake;
+        b.vy[i] = (b.vy[i] + b.ay[i] * halfDt) * brake;
+        b.vz[i] = (b.vz[i] + b.az[i] * halfDt) * brake;
+
+        int maxRung = Integer.numberOfTrailingZeros(ticks);
+        int next = rung(i, maxRung);
+        int end = tick + 1;
+        if (next > r) {
+            rung[i] = next;
+        } else {
+            while (r > next && end % (ticks >> (r - 1)) == 0) {
+                r--;
+            }
+            rung[i] = r;
+        }
+    }
+
+    /**
+     * @param i       Body
+     * @param maxRung Finest rung allowed
+     * @return The coarsest rung whose timestep satisfies the adaptive criterion for this body
+     */
+    private int rung(int i, int maxRung) {
+        Bodies b = bodies;
+        double speed = Math.sqrt(b.vx[i] * b.vx[i] + b.vy[i] * b.vy[i] + b.vz[i] * b.vz[i]);
+        double acceleration = Math.sqrt(b.ax[i] * b.ax[i] + b.ay[i] * b.ay[i] + b.az[i] * b.az[i]);
+        double dt = accuracy * Math.min(
+            speed == 0d ? Double.POSITIVE_INFINITY : b.minRadius / speed,
+            acceleration == 0d ? Double.POSITIVE_INFINITY : Math.sqrt(2 * b.minRadius / acceleration)
+        );
+        if (dt >= timestep) {
+            return 0;
+        }
+        return Math.min(maxRung, (int) Math.ceil(Math.log(timestep / dt) / LN_2));
+    }
+
+    /**
+     * The largest substep that moves no body more than {@link Settings#accuracy()} times the smallest radius, either
+     * from its velocity or from its acceleration, but no smaller than {@link #MAX_SUBSTEPS a fraction} of the step.
+     *
+     * @return Substep
+     */
+    private double adaptiveTimestep() {
+        Bodies b = bodies;
+        double maxSpeedSquared = 0d;
+        double maxAccelerationSquared = 0d;
+        for (int i = 0; i < count; i++) {
+            maxSpeedSquared = Math.max(maxSpeedSquared, b.vx[i] * b.vx[i] + b.vy[i] * b.vy[i] + b.vz[i] * b.vz[i]);
+            maxAccelerationSquared = Math.max(
+                maxAccelerationSquared,
+                b.ax[i] * b.ax[i] + b.ay[i] * b.ay[i] + b.az[i] * b.az[i]
+            );
+        }
+        double minRadius = b.minRadius;
+        double bySpeed = maxSpeedSquared == 0d
+            ? Double.POSITIVE_INFINITY
+            : minRadius / Math.sqrt(maxSpeedSquared);
+        double byAcceleration = maxAccelerationSquared == 0d
+            ? Double.POSITIVE_INFINITY
+            : Math.sqrt(2 * minRadius / Math.sqrt(maxAccelerationSquared));
+        return Math.max(timestep / MAX_SUBSTEPS, accuracy * Math.min(bySpeed, byAcceleration));
+    }
+
+    /**
+     * Puts bodies to sleep when they have stayed within {@link #SETTLE_DISTANCE} of where they were for
+     * {@link Settings#sleepFrames()} steps in a row. Bodies at rest on the floor or in a clump still jitter from step
+     * to step, as the pulls and the collisions pushing back take turns, so it is their net movement that counts.
+     * A sleeping body is not pulled, integrated or bounced, and in collisions it is not moved and takes no impulse.
+     * It wakes when it is hit deep, or when a moving body comes near.
+     */
+    private void settle() {
+        Bodies b = bodies;
+        int sleeping = 0;
+        for (int i = 0; i < count; i++) {
+            if (b.asleep[i]) {
+                sleeping++;
+                continue;
+            }
+            double dx = b.x[i] - anchorX[i];
+            double dy = b.y[i] - anchorY[i];
+            double dz = b.z[i] - anchorZ[i];
+            moving[i] = dx * dx + dy * dy + dz * dz > SETTLE_DISTANCE * SETTLE_DISTANCE;
+            if (moving[i]) {
+                anchor(i);
+            } else if (++quiet[i] >= sleepFrames) {
+                b.asleep[i] = true;
+                b.vx[i] = 0d;
+                b.vy[i] = 0d;
+                b.vz[i] = 0d;
+                b.ax[i] = 0d;
+                b.ay[i] = 0d;
+                b.az[i] = 0d;
+                sleeping++;
+            }
+        }
+        this.sleeping.set(sleeping);
+        asleepGauge.set(sleeping);
+    }
+
+    private void anchor(int i) {
+        anchorX[i] = bodies.x[i];
+        anchorY[i] = bodies.y[i];
+        anchorZ[i] = bodies.z[i];
+        quiet[i] = 0;
+    }
+
+    /**
+     * Collisions may wake bodies from several threads, hence the atomic count.
+     */
+    private void wake(int i) {
+        if (bodies.asleep[i]) {
+            bodies.asleep[i] = false;
+            sleeping.decrementAndGet();
+        }
+        anchor(i);
+    }
+
+    private void wakeAll() {
+        for (int i = 0; i < count; i++) {
+            wake(i);
+        }
+    }
+
+    /**
+     * The versions only ever increase, so their sum changes whenever any knob does. A hash of them could come back to
+     * a value it had before.
+     */
+    private long knobsVersion() {
+        long version = 0L;
+        for (Slidouble slidouble : slidoubles) {
+            version += slidouble.version();
+        }
+        return version;
+    }
+
+    private void updateVelocity(int i) {
+        Bodies b = bodies;
+        if (b.asleep[i]) {
+            return;
+        }
+        b.vx[i] = (b.vx[i] + b.ax[i] * dt) * brake;
+        b.vy[i] = (b.vy[i] + b.ay[i] * dt) * brake;
+        b.vz[i] = (b.vz[i] + b.az[i] * dt) * brake;
+        b.x[i] += b.vx[i] * dt;
+        b.y[i] += b.vy[i] * dt;
+        b.z[i] += b.vz[i] * dt;
+    }
+
+    private void kickDrift(int i) {
+        Bodies b = bodies;
+        if (b.asleep[i]) {
+            return;
+        }
+        double halfDt = dt / 2;
+        b.vx[i] += b.ax[i] * halfDt;
+        b.vy[i] += b.ay[i] * halfDt;
+        b.vz[i] += b.az[i] * halfDt;
+        b.x[i] += b.vx[i] * dt;
+        b.y[i] += b.vy[i] * dt;
+        b.z[i] += b.vz[i] * dt;
+    }
+
+    private void kick(int i) {
+        Bodies b = bodies;
+        if (b.asleep[i]) {
+            return;
+        }
+        double halfDt = dt / 2;
+        b.vx[i] = (b.vx[i] + b.ax[i] * halfDt) * brake;
+        b.vy[i] = (b.vy[i] + b.ay[i] * halfDt) * brake;
+        b.vz[i] = (b.vz[i] + b.az[i] * halfDt) * brake;
+    }
+
+    private void handleWallBounce(int i) {
+        Bodies b = bodies;
+        if (b.asleep[i]) {
+            return;
+        }
+        double r = b.radius[i];
+        double px = b.x[i];
+        double py = b.y[i];
+        double pz = b.z[i];
+        if (Walls.outside(px, r, xBound) || Walls.outside(py, r, yBound) || Walls.outside(pz, r, zBound)) {
+            wallHitCount.increment();
+            double brake = this.wallBrake.mirrorValue();
+            b.vx[i] = Walls.velocity(px, b.vx[i], r, xBound) * brake;
+            b.vy[i] = Walls.velocity(py, b.vy[i], r, yBound) * brake;
+            b.vz[i] = Walls.velocity(pz, b.vz[i], r, zBound) * brake;
+            b.x[i] = Walls.position(px, r, xBound);
+            b.y[i] = Walls.position(py, r, yBound);
+            b.z[i] = Walls.position(pz, r, zBound);
+        }
+    }
+
+    /**
+     * Adds the pair to the {@link Contacts} if {@link #handleCollision(int, int)} could do anything with it: if they
+     * touch, or if one of them is asleep and the other near enough to wake it.
+     */
+    private void gatherContact(int i, int j) {
+        Bodies b = bodies;
+        boolean iAsleep = b.asleep[i];
+        boolean jAsleep = b.asleep[j];
+        if (iAsleep && jAsleep) {
+            return;
+        }
+        double dx = b.x[j] - b.x[i];
+        double dy = b.y[j] - b.y[i];
+        double dz = b.z[j] - b.z[i];
+        double reach = b.radius[i] + b.radius[j];
+        double distSquared = dx * dx + dy * dy + dz * dz;
+        double within = iAsleep || jAsleep ? NEARBY * reach : reach;
+        if (distSquared <= within * within) {
+            contacts.add(i, j);
+        }
+    }
+
+    private void handleCollision(int i, int j) {
+        assert i != j;
+        Bodies b = bodies;
+        boolean iAsleep = b.asleep[i];
+        boolean jAsleep = b.asleep[j];
+        if (iAsleep && jAsleep) {
+            return;
+        }
+        if (iAsleep || jAsleep) {
+            double dx = b.x[j] - b.x[i];
+            double dy = b.y[j] - b.y[i];
+            double dz = b.z[j] - b.z[i];
+            double reach = b.radius[i] + b.radius[j];
+            double distSquared = dx * dx + dy * dy + dz * dz;
+            boolean near = distSquared <= NEARBY * NEARBY * reach * reach;
+            boolean deep = distSquared < (1 - OVERLAP_TOLERANCE) * (1 - OVERLAP_TOLERANCE) * reach * reach;
+            if (near && moving[iAsleep ? j : i] || deep) {
+                wake(iAsleep ? i : j);
+                iAsleep = false;
+                jAsleep = false;
+            }
+        }
+        if (NarrowPhase.collide(b, i, j, collisionBrake.mirrorValue(), !iAsleep, !jAsleep)) {
+            collisionCount.increment();
+        }
+    }
+
+    private void applyCollisionImpulse(int i) {
+        Bodies b = bodies;
+        b.vx[i] += b.ix[i];
+        b.vy[i] += b.iy[i];
+        b.vz[i] += b.iz[i];
+        b.ix[i] = 0d;
+        b.iy[i] = 0d;
+        b.iz[i] = 0d;
+    }
+
+    private void updatePulls(int i) {
+        Bodies b = bodies;
+        if (b.asleep[i]) {
+            return;
+        }
+        double g = gravConstant.times(b.weight[i]);
+        if (diagnostics == null) {
+            stepGravity.pull(b, i, g);
+        } else {
+            stepGravity.pullWithPotential(b, i, g);
+        }
+        double height = b.y[i] + yBound;
+        double groundPull = Walls.groundPull(gravityWell.value(), b.weight[i]);
+        b.ay[i] += height * groundPull;
+        if (diagnostics != null) {
+            b.potential[i] -= groundPull * height * height / 2;
+        }
+    }
+
+    static final int DEFAULT_COUNT = 300;
+
+    static final Range RE_RANGE = new Range(5, 50);
+
+    static final int SCATTER_CHUNK = 4_096;
+
+    private static final int MAX_SUBSTEPS = 64;
+
+    private static final double TIMESTEP_SLACK = 1e-9;
+
+    private static final int MAX_RUNG = 6;
+
+    private static final double LN_2 = Math.log(2d);
+
+    /**
+     * How far a body may wander from where it was and still count as quiet.
+     */
+    private static final double SETTLE_DISTANCE = 1d;
+
+    /**
+     * How near, in multiples of the touching distance, a body that moved more than {@link #SETTLE_DISTANCE} in the
+     * last step must come to wake a sleeping one.
+     */
+    private static final double NEARBY = 1.5d;
+
+    /**
+     * How deep, as a fraction of the touching distance, even a slow body may sink into a sleeping one before it
+     * wakes.
+     */
+    private static final double OVERLAP_TOLERANCE = 0.05d;
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * @param seed  Seed
+     * @param chunk Chunk of {@link #SCATTER_CHUNK} bodies
+     * @return The random source for the chunk in a {@link #scatter(long)}
+     */
+    static SplittableRandom chunkRandom(long seed, int chunk) {
+        return new SplittableRandom(mix(seed + chunk * GOLDEN_GAMMA));
+    }
+
+    /**
+     * The MurmurHash3 finalizer, to decorrelate the seeds of neighbouring chunks.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    static Re[] res(int count) {
+        return res(count, 1);
+    }
+
+    /**
+     * @param count   Bodies
+     * @param threads Threads to create them on
+     * @return Bodies spread over the {@link Spectrum} and over {@link #RE_RANGE} in size
+     */
+    static Re[] res(int count, int threads) {
+        Re[] res = new Re[count];
+        try (Parallel parallel = new Parallel(threads)) {
+            parallel.forEach(count, i -> res[i] = re(i, count));
+        }
+        return res;
+    }
+
+    /**
+     * @param i     Body
+     * @param count Bodies
+     * @return Body i of {@link #res(int)}
+     */
+    static Re re(int i, int count) {
+        Re.Color color = Spectrum.color(i, count);
+        return new Re(
+            10,
+            RE_RANGE.scale(i, count),
+            1L,
+            color,
+            color.brighten(.1d)
+        );
+    }
+
+    /**
+     * How collisions are resolved.
+     */
+    enum ContactSolver {
+
+        /**
+         * In the order the pairs are found, each resolved against the positions left by the ones before it.
+         */
+        SERIAL,
+
+        /**
+         * Gathered into {@link Contacts}, and resolved in parallel one colour at a time.
+         */
+        COLOURED
+    }
+
+    /**
+     * How velocities and positions are advanced.
+     */
+    enum Integrator {
+
+        /**
+         * Explicit Euler, in a single step. With a timestep of 1 this is the original, implicit-dt integration.
+         */
+        EULER,
+
+        /**
+         * Kick-drift-kick leapfrog, in adaptive substeps. Second order, with much less energy drift than
+         * {@link #EULER}. Not symplectic in general, as the length of each substep is chosen from the state at its
+         * start, which breaks time symmetry. When every substep is the whole step, it is the symplectic leapfrog.
+         */
+        LEAPFROG,
+
+        /**
+         * Leapfrog with power-of-two block timesteps per body, so that only the bodies that need it have their pulls
+         * computed often.
+         */
+        BLOCK
+    }
+
+    /**
+     * How the engine computes, as opposed to what it computes.
+     *
+     * @param solver        Gravity solver
+     * @param theta         Opening angle, for {@link Gravity.Solver#BARNES_HUT}
+     * @param broadPhase    Whether to use the {@link SpatialHash} broad phase for collisions
+     * @param threads       Threads for the per-body loops
+     * @param integrator    Integrator
+     * @param timestep      Time advanced per step
+     * @param accuracy      For the adaptive integrators, the fraction of the smallest radius a body may move per
+     *                      substep
+     * @param sleepFrames   Steps a body must be quiet before it is put to sleep, or 0 to never sleep
+     * @param contactSolver How collisions are resolved
+     * @param diagnostics   Steps of {@link Diagnostics} to keep, or 0 to keep none and skip the potential energy
+     */
+    record Settings(
+        Gravity.Solver solver,
+        double theta,
+        boolean broadPhase,
+        int threads,
+        Integrator integrator,
+        double timestep,
+        double accuracy,
+        int sleepFrames,
+        ContactSolver contactSolver,
+        int diagnostics
+    ) {
+
+        Settings {
+            if (timestep <= 0d || accuracy <= 0d || sleepFrames < 0 || diagnostics < 0) {
+                throw new IllegalArgumentException(
+                    "Invalid timestep " + timestep + ", accuracy " + accuracy + ", sleep frames " + sleepFrames +
+                    " or diagnostics " + diagnostics
+                );
+            }
+        }
+
+        Settings(Gravity.Solver solver, double theta, boolean broadPhase, int threads) {
+            this(
+                solver,
+                theta,
+                broadPhase,
+                threads,
+                Integrator.EULER,
+                1d,
+                DEFAULT_ACCURACY,
+                0,
+                ContactSolver.SERIAL,
+                0
+            );
+        }
+
+        static Settings from(Options options) {
+            return new Settings(
+                options.choice("gravity", Gravity.Solver.DIRECT),
+                options.decimal("theta", 0.5d),
+                options.flag("broadphase", true),
+                options.integer("threads", 1),
+                options.choice("integrator", Integrator.EULER),
+                options.decimal("timestep", 1d),
+                options.decimal("accuracy", DEFAULT_ACCURACY),
+                options.integer("sleep", 0),
+                options.choice("contacts", ContactSolver.SERIAL),
+                options.integer("diagnostics", 0)
+            );
+        }
+
+        /**
+         * The options {@link #from(Options)} reads, for the runners that do not use an Engine to reject.
+         */
+        static final List<String> OPTIONS = List.of(
+            "gravity",
+            "theta",
+            "broadphase",
+            "threads",
+            "integrator",
+            "timestep",
+            "accuracy",
+            "sleep",
+            "contacts",
+            "diagnostics"
+        );
+
+        private static final double DEFAULT_ACCURACY = 1d;
+    }
+}
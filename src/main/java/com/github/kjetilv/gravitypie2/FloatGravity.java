@@ -0,0 +1,203 @@
+package com.github.kjetilv.gravitypie2;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The direct sum of {@link SimdGravity}, in single precision. {@link #prepare(Bodies)} copies the positions into
+ * float arrays once per step, so the O(n²) loop reads half the bytes and fits twice the lanes in a vector. Positions
+ * are taken relative to the first body, which keeps them small and their float rounding fine.
+ * <p>
+ * Sums over all sources lose precision in float when there are many of them. With double accumulation, the float
+ * lanes are reduced into double sums every {@link #BLOCK} sources, which keeps each float sum short.
+ * <p>
+ * Only load this class when {@link Gravity.Solver#vectorApi()} says the {@code jdk.incubator.vector} module is
+ * present.
+ */
+final class FloatGravity implements Gravity {
+
+    private final boolean doubleSums;
+
+    private float[] x = new float[0];
+
+    private float[] y = new float[0];
+
+    private float[] z = new float[0];
+
+    /**
+     * @param doubleSums Whether to accumulate the pull in double
+     */
+    FloatGravity(boolean doubleSums) {
+        this.doubleSums = doubleSums;
+    }
+
+    @Override
+    public void prepare(Bodies bodies) {
+        int count = bodies.count;
+        if (x.length < count) {
+            x = new float[count];
+            y = new float[count];
+            z = new float[count];
+        }
+        if (count == 0) {
+            return;
+        }
+        double originX = bodies.x[0];
+        double originY = bodies.y[0];
+        double originZ = bodies.z[0];
+        for (int i = 0; i < count; i++) {
+            x[i] = (float) (bodies.x[i] - originX);
+            y[i] = (float) (bodies.y[i] - originY);
+            z[i] = (float) (bodies.z[i] - originZ);
+        }
+    }
+
+    @Override
+    public void pull(Bodies bodies, int i, double g) {
+        float[] x = this.x;
+        float[] y = this.y;
+        float[] z = this.z;
+        int count = bodies.count;
+        float px = x[i];
+        float py = y[i];
+        float pz = z[i];
+
+        FloatVector pxs = FloatVector.broadcast(SPECIES, px);
+        FloatVector pys = FloatVector.broadcast(SPECIES, py);
+        FloatVector pzs = FloatVector.broadcast(SPECIES, pz);
+        FloatVector ones = FloatVector.broadcast(SPECIES, 1f);
+        FloatVector sumX = FloatVector.zero(SPECIES);
+        FloatVector sumY = FloatVector.zero(SPECIES);
+        FloatVector sumZ = FloatVector.zero(SPECIES);
+
+        double pullX = 0d;
+        double pullY = 0d;
+        double pullZ = 0d;
+        int lanes = SPECIES.length();
+        int upper = SPECIES.loopBound(count);
+        int j = 0;
+        while (j < upper) {
+            int blockEnd = doubleSums ? Math.min(upper, j + BLOCK) : upper;
+            for (; j < blockEnd; j += lanes) {
+                FloatVector dx = FloatVector.fromArray(SPECIES, x, j).sub(pxs);
+                FloatVector dy = FloatVector.fromArray(SPECIES, y, j).sub(pys);
+                FloatVector dz = FloatVector.fromArray(SPECIES, z, j).sub(pzs);
+                FloatVector distSquared = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+                FloatVector inverse = ones.div(distSquared);
+                if (i >= j && i < j + lanes) {
+                    inverse = inverse.withLane(i - j, 0f);
+                }
+                sumX = dx.fma(inverse, sumX);
+                sumY = dy.fma(inverse, sumY);
+                sumZ = dz.fma(inverse, sumZ);
+            }
+            pullX += sumX.reduceLanes(VectorOperators.ADD);
+            pullY += sumY.reduceLanes(VectorOperators.ADD);
+            pullZ += sumZ.reduceLanes(VectorOperators.ADD);
+            sumX = FloatVector.zero(SPECIES);
+            sumY = FloatVector.zero(SPECIES);
+            sumZ = FloatVector.zero(SPECIES);
+        }
+
+        for (; j < count; j++) {
+            if (j != i) {
+                float dx = x[j] - px;
+                float dy = y[j] - py;
+                float dz = z[j] - pz;
+                float inverse = 1f / (dx * dx + dy * dy + dz * dz);
+                pullX += dx * inverse;
+                pullY += dy * inverse;
+                pullZ += dz * inverse;
+            }
+        }
+        bodies.ax[i] = pullX * g;
+        bodies.ay[i] = pullY * g;
+        bodies.az[i] = pullZ * g;
+    }
+
+    @Override
+    public void pullWithPotential(Bodies bodies, int i, double g) {
+        float[] x = this.x;
+        float[] y = this.y;
+        float[] z = this.z;
+        int count = bodies.count;
+        float px = x[i];
+        float py = y[i];
+        float pz = z[i];
+
+        FloatVector pxs = FloatVector.broadcast(SPECIES, px);
+        FloatVector pys = FloatVector.broadcast(SPECIES, py);
+        FloatVector pzs = FloatVector.broadcast(SPECIES, pz);
+        FloatVector ones = FloatVector.broadcast(SPECIES, 1f);
+        FloatVector sumX = FloatVector.zero(SPECIES);
+        FloatVector sumY = FloatVector.zero(SPECIES);
+        FloatVector sumZ = FloatVector.zero(SPECIES);
+        FloatVector sumLogs = FloatVector.zero(SPECIES);
+
+        double pullX = 0d;
+        double pullY = 0d;
+        double pullZ = 0d;
+        double logs = 0d;
+        int lanes = SPECIES.length();
+        int upper = SPECIES.loopBound(count);
+        int j = 0;
+        while (j < upper) {
+            int blockEnd = doubleSums ? Math.min(upper, j + BLOCK) : upper;
+            for (; j < blockEnd; j += lanes) {
+                FloatVector dx = FloatVector.fromArray(SPECIES, x, j).sub(pxs);
+                FloatVector dy = FloatVector.fromArray(SPECIES, y, j).sub(pys);
+                FloatVector dz = FloatVector.fromArray(SPECIES, z, j).sub(pzs);
+                FloatVector distSquared = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+                FloatVector inverse = ones.div(distSquared);
+                FloatVector log = distSquared.lanewise(VectorOperators.LOG);
+                if (i >= j && i < j + lanes) {
+                    inverse = inverse.withLane(i - j, 0f);
+                    log = log.withLane(i - j, 0f);
+                }
+                sumX = dx.fma(inverse, sumX);
+                sumY = dy.fma(inverse, sumY);
+                sumZ = dz.fma(inverse, sumZ);
+                sumLogs = sumLogs.add(log);
+            }
+            pullX += sumX.reduceLanes(VectorOperators.ADD);
+            pullY += sumY.reduceLanes(VectorOperators.ADD);
+            pullZ += sumZ.reduceLanes(VectorOperators.ADD);
+            logs += sumLogs.reduceLanes(VectorOperators.ADD);
+            sumX = FloatVector.zero(SPECIES);
+            sumY = FloatVector.zero(SPECIES);
+            sumZ = FloatVector.zero(SPECIES);
+            sumLogs = FloatVector.zero(SPECIES);
+        }
+
+        for (; j < count; j++) {
+            if (j != i) {
+                float dx = x[j] - px;
+                float dy = y[j] - py;
+                float dz = z[j] - pz;
+                float distSquared = dx * dx + dy * dy + dz * dz;
+                float inverse = 1f / distSquared;
+                pullX += dx * inverse;
+                pullY += dy * inverse;
+                pullZ += dz * inverse;
+                logs += Math.log(distSquared);
+            }
+        }
+        bodies.ax[i] = pullX * g;
+        bodies.ay[i] = pullY * g;
+        bodies.az[i] = pullZ * g;
+        bodies.potential[i] = g * logs / 4;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + SPECIES + (doubleSums ? ", double sums" : "") + "]";
+    }
+
+    /**
+     * Sources summed in float before the sums are moved to double, with double accumulation.
+     */
+    private static final int BLOCK = 256;
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+}
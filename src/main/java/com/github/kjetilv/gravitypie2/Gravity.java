@@ -0,0 +1,78 @@
+package com.github.kjetilv.gravitypie2;
+
+/**
+ * Computes the mutual pull between bodies. Implementations write the pull on a body into its acceleration slot,
+ * leaving the ground pull of the gravity well to the caller.
+ */
+interface Gravity {
+
+    /**
+     * Called once per step, after collisions have moved the bodies and before any {@link #pull(Bodies, int, double)}.
+     *
+     * @param bodies Bodies
+     */
+    default void prepare(Bodies bodies) {
+    }
+
+    /**
+     * @param bodies Bodies
+     * @param i      Body to pull on
+     * @param g      Gravitational constant scaled by the weight of body i
+     */
+    void pull(Bodies bodies, int i, double g);
+
+    /**
+     * As {@link #pull(Bodies, int, double)}, and also writes the share of body i in the potential energy of the
+     * pulls to {@link Bodies#potential}: half of {@code g} times the sum of the log of the distances to the others,
+     * the other half being theirs. Summing the logs of the squared distances, as the implementations do, that is a
+     * quarter of {@code g} times the sum. Slower than the plain pull, as it takes a log per pair.
+     *
+     * @param bodies Bodies
+     * @param i      Body to pull on
+     * @param g      Gravitational constant scaled by the weight of body i
+     */
+    void pullWithPotential(Bodies bodies, int i, double g);
+
+    enum Solver {
+
+        DIRECT,
+
+        SIMD,
+
+        /**
+         * {@link #SIMD} on float positions, with float sums.
+         */
+        SIMD_FLOAT,
+
+        /**
+         * {@link #SIMD} on float positions, with double sums.
+         */
+        SIMD_MIXED,
+
+        BARNES_HUT;
+
+        Gravity create(double theta) {
+            return switch (this) {
+                case DIRECT -> new DirectGravity();
+                case SIMD -> vectorApi() ? new SimdGravity() : new DirectGravity();
+                case SIMD_FLOAT -> vectorApi() ? new FloatGravity(false) : new DirectGravity();
+                case SIMD_MIXED -> vectorApi() ? new FloatGravity(true) : new DirectGravity();
+                case BARNES_HUT -> new Octree(theta);
+            };
+        }
+
+        Solver next() {
+            return values()[(ordinal() + 1) % values().length];
+        }
+
+        /**
+         * Whether the {@code jdk.incubator.vector} module is present. Checked here rather than in the SIMD solvers,
+         * as their classes fail to initialize without it.
+         */
+        static boolean vectorApi() {
+            return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+        }
+
+        private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Measures each {@link Gravity.Solver} against {@link Gravity.Solver#DIRECT}, from the same scatter. Reports the
+ * relative error of the pulls on the first step, and how far the bodies have drifted from the direct run after a
+ * number of steps. Collisions amplify small differences quickly, so the drift only says much over a few steps, and
+ * the drift of {@link Gravity.Solver#SIMD}, whose pulls differ from the direct sum by rounding only, shows how much of
+ * it is just that. Without the Vector API, as told by {@link Gravity.Solver#vectorApi()}, the SIMD solvers fall back to
+ * the direct sum and show no error at all. Options:
+ * <pre>
+ * --count N           Bodies (10000)
+ * --width/height/depth World dimensions (1920/1080/1920)
+ * --preset P          Preset (1)
+ * --steps S           Steps to run before comparing positions (10)
+ * --theta θ           Barnes-Hut opening angle (0.5)
+ * --threads T         Threads (1)
+ * --seed S            Seed for the scatter (1)
+ * </pre>
+ */
+public final class GravityAccuracy {
+
+    public static void main(String[] args) {
+        Options options = Options.parse(args);
+        World world = new World(
+            options.integer("width", DEFAULT_WIDTH),
+            options.integer("height", DEFAULT_HEIGHT),
+            options.integer("depth", DEFAULT_WIDTH)
+        );
+        int steps = options.integer("steps", DEFAULT_STEPS);
+        int threads = options.integer("threads", 1);
+        double theta = options.decimal("theta", 0.5d);
+        long seed = options.longInteger("seed", 1L);
+        Preset preset = Preset.get(options.integer("preset", 1));
+        Re[] res = Engine.res(options.integer("count", DEFAULT_COUNT), threads);
+
+        Bodies reference = run(world, res, Gravity.Solver.DIRECT, theta, threads, seed, preset, steps);
+        System.out.printf(
+            "%d bodies, %d steps, seed %d%n%-12s %14s %14s %14s %14s%n",
+            res.length,
+            steps,
+            seed,
+            "solver",
+            "mean pull err",
+            "max pull err",
+            "rms drift",
+            "max drift"
+        );
+        for (Gravity.Solver solver : Gravity.Solver.values()) {
+            if (solver == Gravity.Solver.DIRECT) {
+                continue;
+            }
+            Bodies bodies = run(world, res, solver, theta, threads, seed, preset, steps);
+            Deviation pulls = pullError(reference, bodies);
+            Deviation drift = drift(reference, bodies);
+            System.out.printf(
+                "%-12s %14.3e %14.3e %14.3e %14.3e%n",
+                solver.name().toLowerCase(Locale.ROOT).replace('_', '-'),
+                pulls.mean(),
+                pulls.max(),
+                drift.mean(),
+                drift.max()
+            );
+        }
+    }
+
+    private GravityAccuracy() {
+    }
+
+    private static final int DEFAULT_WIDTH = 1920;
+
+    private static final int DEFAULT_HEIGHT = 1080;
+
+    private static final int DEFAULT_COUNT = 10_000;
+
+    private static final int DEFAULT_STEPS = 10;
+
+    /**
+     * @return The bodies after the steps, with the pulls of the first step in their accelerations
+     */
+    private static Bodies run(
+        World world,
+        Re[] res,
+        Gravity.Solver solver,
+        double theta,
+        int threads,
+        long seed,
+        Preset preset,
+        int steps
+    ) {
+        try (Engine engine = new Engine(world, res, new Engine.Settings(solver, theta, true, threads))) {
+            engine.scatter(seed);
+            engine.apply(preset);
+            engine.pull();
+            Bodies first = engine.bodies();
+            double[] ax = first.ax.clone();
+            double[] ay = first.ay.clone();
+            double[] az = first.az.clone();
+            for (int step = 0; step < steps; step++) {
+                engine.step();
+            }
+            Bodies bodies = engine.bodies();
+            System.arraycopy(ax, 0, bodies.ax, 0, bodies.count);
+            System.arraycopy(ay, 0, bodies.ay, 0, bodies.count);
+            System.arraycopy(az, 0, bodies.az, 0, bodies.count);
+            return bodies;
+        }
+    }
+
+    /**
+     * @return Mean and max of |a - a'| / |a| over the bodies
+     */
+    private static Deviation pullError(Bodies reference, Bodies bodies) {
+        double sum = 0d;
+        double max = 0d;
+        for (int i = 0; i < reference.count; i++) {
+            double ex = bodies.ax[i] - reference.ax[i];
+            double ey = bodies.ay[i] - reference.ay[i];
+            double ez = bodies.az[i] - reference.az[i];
+            double length = Math.sqrt(
+                reference.ax[i] * reference.ax[i] + reference.ay[i] * reference.ay[i] + reference.az[i] * reference.az[i]
+            );
+            double error = length == 0d ? 0d : Math.sqrt(ex * ex + ey * ey + ez * ez) / length;
+            sum += error;
+            max = Math.max(max, error);
+        }
+        return new Deviation(sum / Math.max(1, reference.count), max);
+    }
+
+    /**
+     * @return Root mean square and max of the distances between the bodies and their reference positions
+     */
+    private static Deviation drift(Bodies reference, Bodies bodies) {
+        double sumSquared = 0d;
+        double maxSquared = 0d;
+        for (int i = 0; i < reference.count; i++) {
+            double dx = bodies.x[i] - reference.x[i];
+            double dy = bodies.y[i] - reference.y[i];
+            double dz = bodies.z[i] - reference.z[i];
+            double distSquared = dx * dx + dy * dy + dz * dz;
+            sumSquared += distSquared;
+            maxSquared = Math.max(maxSquared, distSquared);
+        }
+        return new Deviation(Math.sqrt(sumSquared / Math.max(1, reference.count)), Math.sqrt(maxSquared));
+    }
+
+    private record Deviation(double mean, double max) {
+    }
+}
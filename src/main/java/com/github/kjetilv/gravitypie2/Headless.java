@@ -0,0 +1,176 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Runs the {@link Engine} without a display and reports steps per second. Options:
+ * <pre>
+ * --count N           Bodies (300)
+ * --width/height/depth World dimensions (1920/1080/1920)
+ * --preset P          Preset (1)
+ * --steps S           Steps to run (1000)
+ * --gravity SOLVER    direct, simd, simd-float, simd-mixed or barnes-hut (direct)
+ * --theta θ           Barnes-Hut opening angle (0.5)
+ * --broadphase BOOL   Spatial hash broad phase (true)
+ * --threads T         Threads (1)
+ * --integrator I      euler, leapfrog or block (euler)
+ * --timestep DT       Time per step (1)
+ * --accuracy A        Leapfrog substep, as a fraction of the smallest radius moved (1)
+ * --sleep N           Put bodies to sleep after N quiet steps (0, never)
+ * --contacts C        serial or coloured, see {@link Contacts} (serial)
+ * --diagnostics N     Keep {@link Diagnostics} for the last N steps (0, none)
+ * --diagnostics.csv FILE  Write the diagnostics kept at the end to this file
+ * --seed S            Seed for the scatter (random)
+ * --restore FILE      Start from a checkpoint, ignoring count, size and preset
+ * --checkpoint FILE   Write checkpoints to this file
+ * --checkpoint.interval SECS  Seconds between checkpoints (60)
+ * --record FILE       Record the trajectory, see {@link TrajectoryRecorder}
+ * --arena             Run off-heap with the {@link ArenaEngine} instead
+ * --arena.file FILE   Map the arena to this file, implies --arena
+ * </pre>
+ * The arena takes the count, size, preset, steps, seed and threads. It has its own, coarser model, so the other
+ * engine options, and the checkpoint, restore and record options, are rejected with it rather than ignored.
+ */
+public final class Headless {
+
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        if (options.flag("arena", false) || options.has("arena.file")) {
+            runArena(options);
+            return;
+        }
+        Checkpoint restored = options.has("restore") ? Checkpoint.load(Path.of(options.string("restore", null))) : null;
+        World world = restored == null ? world(options) : restored.world();
+        int steps = options.integer("steps", DEFAULT_STEPS);
+        Preset preset = Preset.get(options.integer("preset", 1));
+
+        Engine.Settings settings = Engine.Settings.from(options);
+        long seed = options.longInteger("seed", System.nanoTime());
+        Re[] res = restored == null
+            ? Engine.res(options.integer("count", Engine.DEFAULT_COUNT), settings.threads())
+            : restored.res();
+        int count = res.length;
+
+        try (
+            Engine engine = new Engine(world, res, settings);
+            Checkpointer checkpointer = Checkpointer.from(engine, options);
+            TrajectoryRecorder recorder = TrajectoryRecorder.from(options, world, res)
+        ) {
+            if (restored == null) {
+                engine.scatter(seed);
+                engine.apply(preset);
+                System.out.println("Seed " + seed);
+            } else {
+                restored.restore(engine);
+            }
+            System.out.println(engine + " " + engine.knobs());
+
+            long start = System.nanoTime();
+            long lastReport = start;
+            long lastStep = 0;
+            for (int step = 1; step <= steps; step++) {
+                engine.step();
+                if (recorder != null) {
+                    recorder.record(engine.bodies(), engine.steps());
+                }
+                if (checkpointer != null) {
+                    checkpointer.afterStep();
+                }
+                long now = System.nanoTime();
+                if (now - lastReport >= REPORT_INTERVAL_NANOS) {
+                    System.out.printf(
+                        "step %d: %.1f steps/s%n",
+                        step,
+                        perSecond(step - lastStep, now - lastReport)
+                    );
+                    lastReport = now;
+                    lastStep = step;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf(
+                "%d bodies, %d steps in %.2fs: %.1f steps/s%n",
+                count,
+                steps,
+                elapsed / 1_000_000_000d,
+                perSecond(steps, elapsed)
+            );
+            System.out.print(engine.metrics().table());
+            Diagnostics diagnostics = engine.diagnostics();
+            if (diagnostics != null) {
+                System.out.print(diagnostics.table());
+                if (options.has("diagnostics.csv")) {
+                    diagnostics.writeCsv(Path.of(options.string("diagnostics.csv", null)));
+                }
+            }
+        }
+    }
+
+    private Headless() {
+    }
+
+    private static final int DEFAULT_WIDTH = 1920;
+
+    private static final int DEFAULT_HEIGHT = 1080;
+
+    private static final int DEFAULT_STEPS = 1_000;
+
+    private static final long REPORT_INTERVAL_NANOS = 1_000_000_000L;
+
+    /**
+     * Options that the {@link ArenaEngine} does not implement.
+     */
+    private static final List<String> ARENA_UNSUPPORTED = Stream.concat(
+        Engine.Settings.OPTIONS.stream().filter(option -> !option.equals("threads")),
+        Stream.of("diagnostics.csv", "restore", "checkpoint", "checkpoint.interval", "record")
+    ).toList();
+
+    private static void runArena(Options options) throws IOException {
+        List<String> unsupported = ARENA_UNSUPPORTED.stream().filter(options::has).toList();
+        if (!unsupported.isEmpty()) {
+            throw new IllegalArgumentException(
+                "The arena steps with its own Euler and monopole grid model, unsupported options: " + unsupported
+            );
+        }
+        World world = world(options);
+        int steps = options.integer("steps", DEFAULT_STEPS);
+        Preset preset = Preset.get(options.integer("preset", 1));
+        int count = options.integer("count", Engine.DEFAULT_COUNT);
+        long seed = options.longInteger("seed", System.nanoTime());
+        try (
+            BodyArena arena = options.has("arena.file")
+                ? BodyArena.map(count, Path.of(options.string("arena.file", null)))
+                : BodyArena.allocate(count);
+            ArenaEngine engine = new ArenaEngine(arena, world, options.integer("threads", 1))
+        ) {
+            engine.scatter(seed);
+            engine.apply(preset);
+            System.out.println("Seed " + seed);
+            System.out.println(engine + " " + preset);
+            long start = System.nanoTime();
+            for (int step = 1; step <= steps; step++) {
+                engine.step();
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf(
+                "%d bodies, %d steps in %.2fs: %.1f steps/s%n",
+                count,
+                steps,
+                elapsed / 1_000_000_000d,
+                perSecond(steps, elapsed)
+            );
+        }
+    }
+
+    private static World world(Options options) {
+        return new World(
+            options.integer("width", DEFAULT_WIDTH),
+            options.integer("height", DEFAULT_HEIGHT),
+            options.integer("depth", DEFAULT_WIDTH)
+        );
+    }
+
+    private static double perSecond(long steps, long nanos) {
+        return steps * 1_000_000_000d / Math.max(1L, nanos);
+    }
+}
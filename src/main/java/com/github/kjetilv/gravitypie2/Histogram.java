@@ -0,0 +1,102 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Log-linear histogram of non-negative values, such as latencies in nanoseconds or allocated bytes. Each power of
+ * two is split into {@link #SUB_BUCKETS} buckets, which bounds the error of a reported percentile to about 6%.
+ * Recording is a couple of atomic increments and never allocates. It is safe to read while being written to, though
+ * a read may be a recording or two behind.
+ */
+final class Histogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        long v = Math.max(0L, value);
+        buckets.incrementAndGet(bucket(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    long count() {
+        return count.get();
+    }
+
+    double mean() {
+        long n = count.get();
+        return n == 0 ? 0d : (double) sum.get() / n;
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile From 0 to 100
+     * @return Upper bound of the bucket holding the percentile, capped at the max
+     */
+    long percentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(n * percentile / 100d));
+        long seen = 0L;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets.get(b);
+            if (seen >= rank) {
+                return Math.min(upperBound(b), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    void reset() {
+        for (int b = 0; b < BUCKETS; b++) {
+            buckets.set(b, 0L);
+        }
+        count.set(0L);
+        sum.set(0L);
+        max.set(0L);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[n=" + count() + " p50=" + percentile(50) + " p99=" + percentile(99) +
+               " max=" + max() + "]";
+    }
+
+    private static final int SUB_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private static int bucket(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        int mantissa = (int) (v >>> exponent) & (SUB_BUCKETS - 1);
+        return (exponent + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << exponent) - 1;
+    }
+}
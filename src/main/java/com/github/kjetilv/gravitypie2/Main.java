@@ -7,55 +7,62 @@ import javafx.scene.paint.Color;
 import javafx.util.Duration;
 
 import java.awt.*;
+import java.nio.file.Path;
 import java.util.List;
 
 import static javafx.geometry.Pos.BOTTOM_CENTER;
 import static javafx.geometry.Pos.BOTTOM_LEFT;
+import static javafx.geometry.Pos.TOP_LEFT;
 import static javafx.scene.paint.Color.*;
 import static javafx.scene.transform.Rotate.Y_AXIS;
 
 @SuppressWarnings("SameParameterValue")
 public class Main extends Application {
 
-    public static final int GRAVITY_WELL_SCALE = 10_000;
-
     private int cameraStep;
 
-    private final Sphere[] spheres;
+    private final MeshView[] spheres;
 
-    private final Re[] res;
+    /**
+     * Spheres moved to where they fell asleep, which need no updates until they wake.
+     */
+    private final boolean[] settled;
 
-    private final PhongMaterial[] materials;
+    private final SphereLod lod;
 
-    private final Vector[] positions;
+    private final boolean lodEnabled = Props.flag("lod", true);
 
-    private final Vector[] accelerations;
+    private final QualityController quality;
 
-    private final Vector[] velocities;
+    private long frame;
 
-    private final Vector[] collisionImpulses;
+    private double cameraX;
 
-    private final SubScene subScene;
+    private double cameraZ;
+
+    private final double focalLength;
+
+    private final Re[] res;
+
+    private final PhongMaterial[] materials;
+
+    private final BatchedSpheres batchedSpheres;
 
-    private final Slidouble gravConstant = new Slidouble("gravConstant");
+    private final MaterialPalette palette;
 
-    private final Slidouble airBrake = new Slidouble("airBrake");
+    private final Engine engine;
 
-    private final Slidouble collisionBrake = new Slidouble("collisionBrake");
+    private final Metrics metrics = new Metrics();
 
-    private final Slidouble wallBrake = new Slidouble("wallBrake");
+    private final Label hud = new Label();
 
-    private final Slidouble gravityWell = new Slidouble("gravityWell");
+    private final int count;
+
+    private final SubScene subScene;
 
     private final AtomicReference<Slidouble> slidableSlidouble = new AtomicReference<>();
 
-    private final List<Slidouble> slidableSlidoubles = List.of(
-        gravConstant,
-        airBrake,
-        collisionBrake,
-        wallBrake,
-        gravityWell
-    );
+    private final List<Slidouble> slidableSlidoubles;
 
     private final AtomicBoolean transitioning = new AtomicBoolean();
 
@@ -71,58 +78,6 @@ public class Main extends Application {
 
     private final SlidoubleListener slidoubleListener = new SlidoubleListener(label, slider, slidableSlidouble);
 
-    private final List<Runnable> presets = List.of(
-        () -> transitionTo(
-            0d,
-            1d,
-            0d,
-            1d,
-            0d
-        ),
-        () -> transitionTo(
-            .04d,
-            .07d,
-            .23d,
-            .32d,
-            0d
-        ),
-        () -> transitionTo(
-            .01,
-            .1d,
-            0d,
-            .85d,
-            0d
-        ),
-        () -> transitionTo(
-            .04512,
-            .03,
-            .71,
-            0d,
-            0d
-        ),
-        () -> transitionTo(
-            0.15662d,
-            .03d,
-            0.94d,
-            0d,
-            0d
-        ),
-        () -> transitionTo(
-            0.07,
-            0d,
-            0.68d,
-            0d,
-            0d
-        ),
-        () -> transitionTo(
-            .01021d,
-            0.11d,
-            .33d,
-            .06d,
-            0d
-        )
-    );
-
     private final int worldSizeX;
 
     private final int worldSizeZ;
@@ -131,12 +86,6 @@ public class Main extends Application {
 
     private final Vector cameraLine;
 
-    private final int zBound;
-
-    private final int xBound;
-
-    private final int yBound;
-
     private int movingLightStep;
 
     private final double movingLightDistance;
@@ -147,59 +96,91 @@ public class Main extends Application {
 
     private final Rectangle bounds;
 
+    private final Simulation simulation;
+
+    private final Checkpointer checkpointer;
+
+    private final TrajectoryRecorder recorder;
+
+    private final Replay replay;
+
     private SphereAnimationTimer sphereAnimationTimer;
 
     private Stage stage;
 
-    {
+    public Main() {
+        Options options = Main.options;
+        replay = options.has("replay")
+            ? new Replay(trajectory(Path.of(options.string("replay", null))), options.decimal("replay.speed", 1d))
+            : null;
+        Checkpoint restored = replay == null && options.has("restore")
+            ? Checkpoint.load(Path.of(options.string("restore", null)))
+            : null;
+
         GraphicsDevice device = device();
         bounds = device.getDefaultConfiguration().getBounds();
-
-        worldSizeX = 75 * device.getDisplayMode().getWidth() / 100;
-        worldSizeZ = worldSizeX;
-        worldSizeY = 75 * device.getDisplayMode().getHeight() / 100;
-
-        zBound = worldSizeZ / 2;
-        xBound = worldSizeX / 2;
-        yBound = worldSizeY / 2;
+        World dimensions = replay != null ? replay.world()
+            : restored != null ? restored.world()
+            : new World(
+                75 * device.getDisplayMode().getWidth() / 100,
+                75 * device.getDisplayMode().getHeight() / 100,
+                75 * device.getDisplayMode().getWidth() / 100
+            );
+        worldSizeX = dimensions.sizeX();
+        worldSizeY = dimensions.sizeY();
+        worldSizeZ = dimensions.sizeZ();
 
         cameraLine = new Vector(0, 0, -2 * worldSizeZ);
-    }
 
-    public Main() {
-        List<Re.Color> list = Shapes.colors(8)
-            .toList();
-
-        res = objects(
-            COUNT,
-            i -> {
-                Re.Color color = Shapes.color(i, COUNT);
-                return new Re(
-                    10,
-                    RE_RANGE.scale(i, COUNT),
-                    1L,
-                    color,
-                    color.brighten(.1d)
-                );
-            }, Re.class
+        double viewportHeight = worldSizeY + SLIZER_VERTICALSPACE;
+        focalLength = viewportHeight / 2 / Math.tan(Math.toRadians(camera.getFieldOfView() / 2));
+
+        Engine.Settings settings = Engine.Settings.from(options);
+        engine = new Engine(
+            dimensions,
+            replay != null ? replay.res()
+                : restored != null ? restored.res()
+                    : Engine.res(options.integer("count", Engine.DEFAULT_COUNT), settings.threads()),
+            settings,
+            metrics
         );
-
-        positions = objects(
-            COUNT,
-            _ ->
-                new Vector(new Range(-randomRange(), randomRange())), Vector.class
+        if (restored != null) {
+            restored.restore(engine);
+        } else if (replay == null) {
+            long seed = options.longInteger("seed", System.nanoTime());
+            engine.scatter(seed);
+            System.out.println("Seed " + seed);
+        }
+        count = engine.count();
+        res = engine.res();
+        slidableSlidoubles = engine.slidoubles();
+
+        if (Props.choice("render", RenderMode.NODES) == RenderMode.BATCHED) {
+            batchedSpheres = new BatchedSpheres(res, Props.integer("divisions", BATCHED_DIVISIONS));
+            palette = null;
+            materials = new PhongMaterial[0];
+            lod = null;
+            spheres = new MeshView[0];
+            settled = new boolean[0];
+        } else {
+            batchedSpheres = null;
+            palette = Props.choice("materials", MaterialMode.PER_BODY) == MaterialMode.PALETTE
+                ? palette(count)
+                : null;
+            materials = new PhongMaterial[count];
+            lod = new SphereLod(count);
+            spheres = new MeshView[count];
+            settled = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                materials[i] = palette == null ? material(i) : palette.initial(i);
+                spheres[i] = sphere(i);
+            }
+        }
+        quality = new QualityController(
+            TimeUnit.MICROSECONDS.toNanos(Math.round(1_000 * Props.decimal("budget.ms", FRAME_BUDGET_MS))),
+            metrics
         );
 
-        accelerations = zeroes(COUNT);
-
-        velocities = zeroes(COUNT);
-
-        collisionImpulses = objects(COUNT, _ -> ZERO, Vector.class);
-
-        materials = objects(COUNT, this::material, PhongMaterial.class);
-
-        spheres = objects(COUNT, this::sphere, Sphere.class);
-
         Sphere origo = new Sphere(4);
         Material blueMaterial = new PhongMaterial(GHOSTWHITE);
         origo.setMaterial(blueMaterial);
@@ -222,7 +203,7 @@ public class Main extends Application {
             Shapes.createWireBox(worldSizeX, worldSizeY, worldSizeZ);
         Stream<Node> nodeStream = Stream.concat(
             Stream.of(ambient, pl1, pl2, movingLight1, movingLight2, origo, wireBox),
-            Arrays.stream(spheres)
+            batchedSpheres == null ? Arrays.stream(spheres) : Stream.of(batchedSpheres.node())
         );
         List<Node> nodes = nodeStream.toList();
 
@@ -238,7 +219,39 @@ public class Main extends Application {
         subScene.setCamera(camera);
 
         updateSlider();
-        preset(1);
+        if (restored == null) {
+            preset(1);
+        }
+
+        checkpointer = Checkpointer.from(engine, options);
+        recorder = replay == null ? TrajectoryRecorder.from(options, dimensions, res) : null;
+        simulation = new Simulation(
+            engine.bodies(),
+            checkpointer == null && recorder == null ? engine::step : this::stepAndKeep,
+            Props.decimal("hz", STEPS_PER_SECOND)
+        );
+    }
+
+    /**
+     * Accepts the {@link Headless} engine options, plus:
+     * <pre>
+     * --seed S                     Seed for the scatter (random)
+     * --restore FILE               Start from a checkpoint instead of a scatter, in its world
+     * --checkpoint FILE            Write checkpoints to this file
+     * --checkpoint.interval SECS   Seconds between checkpoints (60)
+     * --record FILE                Record the trajectory to this file
+     * --record.keyframes K         Frames per keyframe (32)
+     * --record.ring FRAMES         Keep only about the last FRAMES frames (0, keep all)
+     * --replay FILE                Replay a recorded trajectory, with no physics, in its world
+     * --replay.speed FRAMES        Frames per render, negative for backwards (1)
+     * </pre>
+     * In replay, left and right arrows change the speed and space pauses.
+     *
+     * @param args Options
+     */
+    public static void main(String[] args) {
+        options = Options.parse(args);
+        launch(args);
     }
 
     @Override
@@ -259,13 +272,19 @@ public class Main extends Application {
 
         sliderBox.setPadding(new javafx.geometry.Insets(2));
         sliderBox.setStyle("-fx-background-color: rgba(0, 0, 0, 0); -fx-background-radius: 5;");
+
+        hud.setVisible(false);
+        hud.setMouseTransparent(true);
+        hud.setTextFill(WHITE);
+        hud.setPadding(new javafx.geometry.Insets(4));
+        hud.setStyle("-fx-font-family: monospace; -fx-background-color: rgba(0, 0, 0, 0.6);");
     }
 
     @Override
     public void start(Stage stage) {
         this.stage = stage;
 
-        slidableSlidouble.set(gravConstant);
+        slidableSlidouble.set(engine.gravConstant());
 
         // Update the constant when slider changes
         slider.valueProperty().addListener(slidoubleListener);
@@ -274,20 +293,65 @@ public class Main extends Application {
         Scene scene = setScene(root);
         showStage(this.stage, scene);
 
-        sphereAnimationTimer = new SphereAnimationTimer(this::update);
+        if (replay == null) {
+            simulation.start();
+        }
+
+        sphereAnimationTimer = new SphereAnimationTimer(this::render, metrics, this::report);
         sphereAnimationTimer.start();
     }
 
-    private void transitionTo(
-        double gravTo,
-        double airTo,
-        double collisionTo,
-        double wallTo,
-        double wellTo
-    ) {
+    @Override
+    public void stop() {
+        if (sphereAnimationTimer != null) {
+            sphereAnimationTimer.stop();
+        }
+        simulation.stop();
+        if (checkpointer != null) {
+            checkpointer.close();
+        }
+        if (recorder != null) {
+            try {
+                recorder.close();
+                System.out.println("Recorded " + recorder.frames() + " frames");
+            } catch (IOException e) {
+                System.err.println("Failed to close " + recorder + ": " + e);
+            }
+        }
+        if (replay != null) {
+            replay.close();
+        }
+        engine.close();
+        String csv = Props.string("metrics.csv", null);
+        if (csv != null) {
+            dumpMetrics(Path.of(csv));
+        }
+    }
+
+    private void stepAndKeep() {
+        engine.step();
+        if (recorder != null) {
+            recorder.record(engine.bodies(), engine.steps());
+        }
+        if (checkpointer != null) {
+            checkpointer.afterStep();
+        }
+    }
+
+    private void transitionTo(Preset preset) {
         if (transitioning.compareAndSet(false, true)) {
             new Transition() {
 
+                private final Slidouble gravConstant = engine.gravConstant();
+
+                private final Slidouble airBrake = engine.airBrake();
+
+                private final Slidouble collisionBrake = engine.collisionBrake();
+
+                private final Slidouble wallBrake = engine.wallBrake();
+
+                private final Slidouble gravityWell = engine.gravityWell();
+
                 private final double gravFrom = gravConstant.value();
 
                 private final double airFrom = airBrake.value();
@@ -306,11 +370,11 @@ public class Main extends Application {
 
                 @Override
                 protected void interpolate(double frac) {
-                    gravConstant.value(gravFrom + frac * (gravTo - gravFrom));
-                    airBrake.value(airFrom + frac * (airTo - airFrom));
-                    collisionBrake.value(collisionFrom + frac * (collisionTo - collisionFrom));
-                    wallBrake.value(wallFrom + frac * (wallTo - wallFrom));
-                    gravityWell.value(wellFrom + frac * (wellTo - wellFrom));
+                    gravConstant.value(gravFrom + frac * (preset.gravConstant() - gravFrom));
+                    airBrake.value(airFrom + frac * (preset.airBrake() - airFrom));
+                    collisionBrake.value(collisionFrom + frac * (preset.collisionBrake() - collisionFrom));
+                    wallBrake.value(wallFrom + frac * (preset.wallBrake() - wallFrom));
+                    gravityWell.value(wellFrom + frac * (preset.gravityWell() - wellFrom));
                     slidoubleListener.refresh();
                 }
             }.play();
@@ -325,15 +389,20 @@ public class Main extends Application {
         return phong;
     }
 
-    private Sphere sphere(int i) {
-        Sphere sphere = new Sphere(res[i].radius());
+    private MeshView sphere(int i) {
+        MeshView sphere = new MeshView(lod.mesh(i));
+        double radius = res[i].radius();
+        sphere.setScaleX(radius);
+        sphere.setScaleY(radius);
+        sphere.setScaleZ(radius);
         sphere.setMaterial(materials[i]);
         return sphere;
     }
 
     private StackPane buildRootStackPane(VBox sliderBox) {
-        StackPane root = new StackPane(subScene, sliderBox);
+        StackPane root = new StackPane(subScene, sliderBox, hud);
         StackPane.setAlignment(sliderBox, BOTTOM_LEFT);
+        StackPane.setAlignment(hud, TOP_LEFT);
         StackPane.setAlignment(subScene, BOTTOM_CENTER);
         return root;
     }
@@ -357,9 +426,31 @@ public class Main extends Application {
                         : currentSlidableSlidouble) - 1;
                     updateSlider();
                 }
-                case S -> System.out.println(slidableSlidoubles.stream()
-                    .map(Objects::toString)
-                    .collect(Collectors.joining(", ")));
+                case S -> {
+                    System.out.println(slidableSlidoubles.stream()
+                        .map(Objects::toString)
+                        .collect(Collectors.joining(", ")));
+                    if (engine.diagnostics() != null) {
+                        System.out.println(engine.diagnostics().latest());
+                    }
+                }
+                case G -> System.out.println(engine.nextGravity());
+                case H -> {
+                    hud.setVisible(!hud.isVisible());
+                    report();
+                }
+                case C -> dumpMetrics(Path.of("gravitypie-metrics-" + Instant.now().getEpochSecond() + ".csv"));
+                case R -> metrics.reset();
+                case LEFT, RIGHT, SPACE -> {
+                    if (replay != null) {
+                        switch (code) {
+                            case LEFT -> replay.slower();
+                            case RIGHT -> replay.faster();
+                            default -> replay.togglePause();
+                        }
+                        System.out.println(replay);
+                    }
+                }
                 case Q ->
                     stage.close();
                 default -> {
@@ -380,41 +471,97 @@ public class Main extends Application {
         stage.show();
     }
 
-    private void update() {
-        for (int i = 0; i < COUNT; i++) {
-            for (int j = i + 1; j < COUNT; j++) {
-                handleCollision(i, j);
+    private void render() {
+        Snapshot snapshot = replay == null ? simulation.latest() : replay.next();
+        QualityController.Level level = quality.level();
+        frame++;
+
+        long start = metrics.start();
+        long time = start;
+        if (batchedSpheres != null) {
+            batchedSpheres.update(snapshot, worldSizeX);
+            time = metrics.lap(Phase.SPHERE_MOVE, time);
+        } else {
+            boolean skipDistant = level.skipDistant(frame);
+            for (int i = 0; i < count; i++) {
+                if (snapshot.asleep[i] ? !settled[i] : !(skipDistant && distant(snapshot, i))) {
+                    moveSphere(snapshot, i);
+                }
             }
-        }
+            time = metrics.lap(Phase.SPHERE_MOVE, time);
+
+            for (int i = 0; i < count; i++) {
+                if (snapshot.asleep[i]) {
+                    if (!settled[i]) {
+                        setOpacity(snapshot, i);
+                        settled[i] = true;
+                    }
+                } else {
+                    settled[i] = false;
+                    if (!level.skipOpacity(i, frame)) {
+                        setOpacity(snapshot, i);
+                    }
+                }
+            }
+            time = metrics.lap(Phase.OPACITY, time);
 
-        for (int i = 0; i < COUNT; i++) {
-            velocities[i] = applyCollisionImpulse(i, velocities[i]);
+            if (lodEnabled) {
+                int bias = level.coarse() ? 1 : 0;
+                for (int i = 0; i < count; i++) {
+                    selectLevelOfDetail(snapshot, i, bias);
+                }
+                time = metrics.lap(Phase.LEVEL_OF_DETAIL, time);
+            }
         }
 
-        for (int i = 0; i < COUNT; i++) {
-            accelerations[i] = updatePulls(i);
-        }
+        moveLight();
 
-        for (int i = 0; i < COUNT; i++) {
-            velocities[i] = updateVelocity(i, velocities[i]);
-            positions[i] = positions[i].plus(velocities[i]);
-        }
+        moveCamera();
+        time = metrics.lap(Phase.LIGHT_CAMERA, time);
 
-        for (int i = 0; i < COUNT; i++) {
-            handleWallBounce(i);
-        }
+        quality.frame(time - start);
+    }
 
-        for (int i = 0; i < COUNT; i++) {
-            moveSphere(i);
-        }
+    private boolean distant(Snapshot snapshot, int i) {
+        double dx = snapshot.x[i] - cameraX;
+        double dy = snapshot.y[i];
+        double dz = snapshot.z[i] - cameraZ;
+        double orbit = cameraLine.length();
+        return dx * dx + dy * dy + dz * dz > orbit * orbit;
+    }
 
-        for (int i = 0; i < COUNT; i++) {
-            setOpacity(i);
+    private void selectLevelOfDetail(Snapshot snapshot, int i, int bias) {
+        double dx = snapshot.x[i] - cameraX;
+        double dy = snapshot.y[i];
+        double dz = snapshot.z[i] - cameraZ;
+        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        double projectedRadius = res[i].radius() * focalLength / Math.max(1d, distance);
+        TriangleMesh mesh = lod.select(i, projectedRadius, bias);
+        if (mesh != null) {
+            spheres[i].setMesh(mesh);
         }
+    }
 
-        moveLight();
+    private void report() {
+        if (hud.isVisible()) {
+            Diagnostics diagnostics = engine.diagnostics();
+            hud.setText(diagnostics == null ? metrics.table() : metrics.table() + diagnostics.table());
+        }
+    }
 
-        moveCamera();
+    private void dumpMetrics(Path path) {
+        try {
+            metrics.writeCsv(path);
+            System.out.println("Metrics written to " + path.toAbsolutePath());
+            Diagnostics diagnostics = engine.diagnostics();
+            if (diagnostics != null) {
+                Path diagnosticsPath = path.resolveSibling("diagnostics-" + path.getFileName());
+                diagnostics.writeCsv(diagnosticsPath);
+                System.out.println("Diagnostics written to " + diagnosticsPath.toAbsolutePath());
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write metrics to " + path + ": " + e);
+        }
     }
 
     private void moveLight() {
@@ -430,8 +577,8 @@ public class Main extends Application {
     }
 
     private void preset(int i) {
-        if (i < presets.size()) {
-            presets.get(i).run();
+        if (i < Preset.ALL.size()) {
+            transitionTo(Preset.get(i));
             slidoubleListener.refresh();
         }
     }
@@ -440,117 +587,32 @@ public class Main extends Application {
         slidoubleListener.nowDo(slidableSlidoubles.get(currentSlidableSlidouble));
     }
 
-    private Vector updateVelocity(Integer index, Vector v) {
-        return v.plus(accelerations[index]).mul(airBrake.mirrorValue());
-    }
-
-    private void handleWallBounce(int i) {
-        double r = res[i].radius();
-
-        Vector vel = velocities[i];
-        Vector pos = positions[i];
-
-        double
-            vx = vel.x(),
-            vy = vel.y(),
-            vz = vel.z();
-        double
-            px = pos.x(),
-            py = pos.y(),
-            pz = pos.z();
-
-        boolean h = false;
-
-        if (px < -xBound + r) {
-            vx = Math.abs(vx);
-            px = -xBound + r + 1;
-            h = true;
-        } else if (px > xBound - r) {
-            vx = -Math.abs(vx);
-            px = xBound - r - 1;
-            h = true;
-        }
-
-        if (py < -yBound + r) {
-            vy = Math.abs(vy);
-            py = -yBound + r + 1;
-            h = true;
-        } else if (py > yBound - r) {
-            vy = -Math.abs(vy);
-            py = yBound - r - 1;
-            h = true;
-        }
-
-        if (pz < -zBound + r) {
-            vz = Math.abs(vz);
-            pz = -zBound + r + 1;
-            h = true;
-        } else if (pz > zBound - r) {
-            vz = -Math.abs(vz);
-            pz = zBound - r - 1;
-            h = true;
-        }
-
-        if (h) {
-            double brake = this.wallBrake.mirrorValue();
-            velocities[i] = new Vector(vx * brake, vy * brake, vz * brake);
-            positions[i] = new Vector(px, py, pz);
-        }
+    private void moveSphere(Snapshot snapshot, int i) {
+        MeshView sphere = spheres[i];
+        sphere.setTranslateX(snapshot.x[i]);
+        sphere.setTranslateY(snapshot.y[i]);
+        sphere.setTranslateZ(snapshot.z[i]);
     }
 
-    private void moveSphere(int i) {
-        Vector pos = positions[i];
-        Sphere sphere = spheres[i];
-        sphere.setTranslateX(pos.x());
-        sphere.setTranslateY(pos.y());
-        sphere.setTranslateZ(pos.z());
-    }
-
-    private void setOpacity(int i) {
-        double distToOrigo = positions[i].length();
+    private void setOpacity(Snapshot snapshot, int i) {
+        double distToOrigo = snapshot.distanceToOrigo(i);
         double dim = 1 - distToOrigo / worldSizeX;
-        materials[i].setDiffuseColor(res[i].toRgb(dim, dim));
-    }
-
-    private void handleCollision(int i, int j) {
-        assert i != j;
-        Vector delta = positions[j].minus(positions[i]);
-        double iR = res[i].radius();
-        double jR = res[j].radius();
-        double dist = delta.zero() ? Math.min(iR, jR) / 100.0d : delta.length();
-        if (dist <= iR + jR) {
-            Vector n = delta.div(dist);
-            double overlap = iR + jR - dist;
-
-            double iMass = res[i].mass();
-            double jMass = res[j].mass();
-
-            double totalMass = iMass + jMass;
-            double iMove = overlap * iMass / totalMass;
-            double jMove = overlap * jMass / totalMass;
-
-            positions[i] = positions[i].minus(n.mul(iMove));
-            positions[j] = positions[j].plus(n.mul(jMove));
-
-            double vRelN = velocities[i].minus(velocities[j]).dot(n);
-            double rawImpulse = -(1 + Math.E) * vRelN / (1 / iMass + 1 / jMass);
-            double impulse = collisionBrake.mirrorTimes(rawImpulse);
-
-            collisionImpulses[i] = collisionImpulses[i].plus(n.mul(impulse / jMass));
-            collisionImpulses[j] = collisionImpulses[j].minus(n.mul(impulse / iMass));
+        if (palette == null) {
+            materials[i].setDiffuseColor(res[i].toRgb(dim, dim));
+        } else {
+            PhongMaterial material = palette.update(i, dim);
+            if (material != null) {
+                spheres[i].setMaterial(material);
+            }
         }
     }
 
-    private Vector applyCollisionImpulse(Integer index, Vector v) {
-        Vector collisionImpulse = collisionImpulses[index];
-        collisionImpulses[index] = ZERO;
-        return v.plus(collisionImpulse);
-    }
-
     private void moveCamera() {
         double angle = 2 * Math.PI * cameraStep / CAMERA_STEPS;
         double x = Math.sin(angle) * cameraLine.length();
         double z = Math.cos(angle) * cameraLine.length();
+        cameraX = x;
+        cameraZ = z;
 
         // Move the camera along the circle around origin
         camera.setTranslateX(x);
@@ -563,47 +625,36 @@ public class Main extends Application {
         cameraStep = (cameraStep - 1) % CAMERA_STEPS;
     }
 
-    private Vector updatePulls(int i) {
-        Vector pos = positions[i];
-        Re re = res[i];
-        Vector pull = ZERO;
-        for (int j = 0; j < i; j++) {
-            double force = pullFrom(positions[j], pos, re);
-            pull = pull.plus(positions[j].minus(pos).mul(force));
-        }
-        for (int j = i + 1; j < COUNT; j++) {
-            double force = pullFrom(positions[j], pos, re);
-            pull = pull.plus(positions[j].minus(pos).mul(force));
-        }
-        Vector heightVector = new Vector(0, pos.y() + yBound, 0);
-        double height = heightVector.length();
-        double groundPull = gravityWell.times(re.weight() / GRAVITY_WELL_SCALE) / height * height;
-        return pull.plus(heightVector.mul(groundPull));
-    }
+    static final int CAMERA_STEPS = 21600;
 
-    private double pullFrom(Vector sPos, Vector pos, Re re) {
-        double distance = pos.distanceTo(sPos);
-        return gravConstant.times(re.weight()) / (distance * distance);
-    }
+    static final double STEPS_PER_SECOND = 60d;
 
-    private double randomRange() {
-        return worldSizeZ * 0.4;
-    }
+    static final int BATCHED_DIVISIONS = 8;
 
-    static final int COUNT = 300;
+    static final double FRAME_BUDGET_MS = 8d;
 
-    static final Range RE_RANGE = new Range(5, 50);
+    static final int PALETTE_COLOURS = 64;
 
-    static final int CAMERA_STEPS = 21600;
+    static final int PALETTE_LEVELS = 16;
 
     private static final String TITLE = "Stars";
 
-    private static final Vector ZERO = new Vector();
-
     private static final int MOVING_LIGHT_STEPS = 3600;
 
     private static final int SLIZER_VERTICALSPACE = 60;
 
+    private static volatile Options options = Options.parse();
+
+    private static Trajectory trajectory(Path path) {
+        try {
+            Trajectory trajectory = Trajectory.open(path);
+            System.out.println("Replaying " + trajectory);
+            return trajectory;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replay " + path, e);
+        }
+    }
+
     private static GraphicsDevice device() {
         GraphicsDevice[] devices = GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices();
         return Arrays.stream(
@@ -613,17 +664,25 @@ public class Main extends Application {
             .orElseThrow();
     }
 
-    private static Vector[] zeroes(int count) {
-        return objects(count, _ -> ZERO, Vector.class);
+    private static MaterialPalette palette(int count) {
+        return new MaterialPalette(
+            count,
+            Props.integer("palette.colours", PALETTE_COLOURS),
+            Props.integer("palette.levels", PALETTE_LEVELS)
+        );
     }
 
-    @SuppressWarnings("unchecked")
-    private static <T> T[] objects(int count, IntFunction<T> intFunction, Class<T> clazz) {
-        Object array = Array.newInstance(clazz, count);
-        IntStream.range(0, count)
-            .forEach(i ->
-                Array.set(array, i, intFunction.apply(i))
-            );
-        return (T[]) array;
+    enum RenderMode {
+
+        NODES,
+
+        BATCHED
+    }
+
+    enum MaterialMode {
+
+        PER_BODY,
+
+        PALETTE
     }
 }
@@ -0,0 +1,61 @@
+package com.github.kjetilv.gravitypie2;
+
+import javafx.scene.paint.PhongMaterial;
+
+/**
+ * Shared materials for the sphere nodes: a fixed number of base colours from the {@link Spectrum}, each in a fixed
+ * number of distance-based brightness levels, all created up front. A body only changes material when it crosses
+ * into another brightness level, and never allocates a colour or invalidates a material on the way.
+ */
+final class MaterialPalette {
+
+    private final int levels;
+
+    private final PhongMaterial[][] materials;
+
+    private final int[] colourOf;
+
+    private final int[] levelOf;
+
+    MaterialPalette(int count, int colours, int levels) {
+        if (colours < 1 || levels < 1) {
+            throw new IllegalArgumentException("Invalid palette: " + colours + "x" + levels);
+        }
+        this.levels = levels;
+        this.materials = new PhongMaterial[colours][levels];
+        for (int c = 0; c < colours; c++) {
+            Re.Color color = Spectrum.color(c, colours);
+            javafx.scene.paint.Color specular = color.brighten(.1).rgb();
+            for (int level = 0; level < levels; level++) {
+                double dim = (level + 1d) / levels;
+                PhongMaterial material = new PhongMaterial(color.rgb(dim, dim));
+                material.setSpecularColor(specular);
+                materials[c][level] = material;
+            }
+        }
+        this.colourOf = new int[count];
+        this.levelOf = new int[count];
+        for (int i = 0; i < count; i++) {
+            colourOf[i] = Spectrum.bucket(i, count, colours);
+            levelOf[i] = levels - 1;
+        }
+    }
+
+    PhongMaterial initial(int i) {
+        return materials[colourOf[i]][levelOf[i]];
+    }
+
+    /**
+     * @param i   Body
+     * @param dim Brightness, from 0 to 1
+     * @return The body's new material, or null if it stays in the same brightness level
+     */
+    PhongMaterial update(int i, double dim) {
+        int level = (int) Math.max(0, Math.min(levels - 1, dim * levels));
+        if (level == levelOf[i]) {
+            return null;
+        }
+        levelOf[i] = level;
+        return materials[colourOf[i]][level];
+    }
+}
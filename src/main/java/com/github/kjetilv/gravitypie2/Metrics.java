@@ -0,0 +1,197 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+import java.lang.management.ManagementFactory;
+
+import jdk.jfr.EventType;
+
+/**
+ * Per-phase latency histograms, per-step and per-frame allocation histograms, and named gauges. Phases are also
+ * emitted as {@link PhaseEvent JFR events} when a recording has them enabled.
+ * <p>
+ * Typical use is a chain of laps:
+ * <pre>
+ * long t = metrics.start();
+ * collide();
+ * t = metrics.lap(Phase.COLLISION, t);
+ * </pre>
+ * The allocations are those of the thread that steps or renders, as the JVM counts them per thread. What the
+ * {@link Parallel} pool's threads allocate in the per-body loops is not included, so with more than one thread a step
+ * may allocate more than its histogram shows. The pool retires idle threads and their counts with them, so summing
+ * over its threads would not give a steady count either.
+ */
+final class Metrics {
+
+    private final Histogram[] times = histograms();
+
+    private final Histogram[] allocations = histograms();
+
+    private final Map<String, AtomicLong> gauges = new ConcurrentSkipListMap<>();
+
+    private final com.sun.management.ThreadMXBean threads = threadMXBean();
+
+    private volatile long step;
+
+    long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * @param phase Phase that just ended
+     * @param start When it started
+     * @return Now, for the start of the next phase
+     */
+    long lap(Phase phase, long start) {
+        long now = System.nanoTime();
+        long nanos = now - start;
+        times[phase.ordinal()].record(nanos);
+        if (PHASE_EVENTS.isEnabled()) {
+            PhaseEvent event = new PhaseEvent();
+            if (event.shouldCommit()) {
+                event.phase = phase.name();
+                event.step = step;
+                event.nanos = nanos;
+                event.commit();
+            }
+        }
+        return now;
+    }
+
+    /**
+     * @return Bytes allocated by the current thread so far, not counting any threads it hands work to, or -1 if the
+     *     JVM can't tell
+     */
+    long allocatedBytes() {
+        return threads == null ? -1L : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * @param phase Phase that just ended
+     * @param since {@link #allocatedBytes()} when it started
+     */
+    void allocated(Phase phase, long since) {
+        if (since >= 0) {
+            allocations[phase.ordinal()].record(allocatedBytes() - since);
+        }
+    }
+
+    void step(long step) {
+        this.step = step;
+    }
+
+    /**
+     * @param name Name
+     * @return Gauge to set, created on first use
+     */
+    AtomicLong gauge(String name) {
+        return gauges.computeIfAbsent(name, _ -> new AtomicLong());
+    }
+
+    Histogram time(Phase phase) {
+        return times[phase.ordinal()];
+    }
+
+    Histogram allocation(Phase phase) {
+        return allocations[phase.ordinal()];
+    }
+
+    void reset() {
+        for (Phase phase : Phase.values()) {
+            times[phase.ordinal()].reset();
+            allocations[phase.ordinal()].reset();
+        }
+    }
+
+    /**
+     * @return Phases and gauges as a text table, for the HUD and the console
+     */
+    String table() {
+        StringBuilder sb = new StringBuilder(String.format(
+            "%-18s %8s %8s %8s %8s%n", "phase (µs)", "mean", "p50", "p99", "max"
+        ));
+        for (Phase phase : Phase.values()) {
+            Histogram time = times[phase.ordinal()];
+            if (time.count() > 0) {
+                sb.append(String.format(
+                    "%-18s %8.1f %8.1f %8.1f %8.1f%n",
+                    phase.name().toLowerCase(Locale.ROOT),
+                    time.mean() / 1_000d,
+                    time.percentile(50) / 1_000d,
+                    time.percentile(99) / 1_000d,
+                    time.max() / 1_000d
+                ));
+            }
+        }
+        for (Phase phase : Phase.values()) {
+            Histogram allocation = allocations[phase.ordinal()];
+            if (allocation.count() > 0) {
+                sb.append(String.format(
+                    "%-18s %8.0f %8d %8d %8d%n",
+                    "alloc " + phase.name().toLowerCase(Locale.ROOT) + " (B)",
+                    allocation.mean(),
+                    allocation.percentile(50),
+                    allocation.percentile(99),
+                    allocation.max()
+                ));
+            }
+        }
+        gauges.forEach((name, value) ->
+            sb.append(String.format("%-18s %8d%n", name, value.get())));
+        return sb.toString();
+    }
+
+    void writeCsv(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("metric,kind,count,mean,p50,p99,max");
+            writer.newLine();
+            for (Phase phase : Phase.values()) {
+                writeCsv(writer, phase, "nanos", times[phase.ordinal()]);
+                writeCsv(writer, phase, "bytes", allocations[phase.ordinal()]);
+            }
+            for (Map.Entry<String, AtomicLong> entry : gauges.entrySet()) {
+                long value = entry.getValue().get();
+                writer.write(entry.getKey() + ",gauge,1," + value + "," + value + "," + value + "," + value);
+                writer.newLine();
+            }
+        }
+    }
+
+    private static void writeCsv(BufferedWriter writer, Phase phase, String kind, Histogram histogram)
+        throws IOException {
+        if (histogram.count() > 0) {
+            writer.write(String.format(
+                Locale.ROOT,
+                "%s,%s,%d,%.1f,%d,%d,%d",
+                phase.name().toLowerCase(Locale.ROOT),
+                kind,
+                histogram.count(),
+                histogram.mean(),
+                histogram.percentile(50),
+                histogram.percentile(99),
+                histogram.max()
+            ));
+            writer.newLine();
+        }
+    }
+
+    private static Histogram[] histograms() {
+        Histogram[] histograms = new Histogram[Phase.values().length];
+        Arrays.setAll(histograms, _ -> new Histogram());
+        return histograms;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean &&
+            bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+
+    /**
+     * Asked before creating an event, so that laps allocate nothing when no recording has the events enabled.
+     */
+    private static final EventType PHASE_EVENTS = EventType.getEventType(PhaseEvent.class);
+}
@@ -0,0 +1,74 @@
+package com.github.kjetilv.gravitypie2;
+
+/**
+ * What happens to a pair of bodies that the broad phase found near each other, as the engines see it. If they
+ * touch, they are pushed apart along the line between their centres, each by its share of the overlap in proportion
+ * to its mass, and the impulse of a collision with a restitution of {@link Math#E} is added to their pending impulses,
+ * weighted by the inverse mass of the other. The caller applies the impulses after all the pairs are resolved.
+ * <p>
+ * A body that is not to be moved, such as a sleeping one, keeps its position and impulse, but still counts towards
+ * the other's.
+ */
+final class NarrowPhase {
+
+    private NarrowPhase() {
+    }
+
+    /**
+     * @param b     Bodies
+     * @param i     One body
+     * @param j     The other body
+     * @param brake What the collision brake leaves of the impulse
+     * @param iMove Whether i is moved
+     * @param jMove Whether j is moved
+     * @return Whether they touched
+     */
+    static boolean collide(Bodies b, int i, int j, double brake, boolean iMove, boolean jMove) {
+        double dx = b.x[j] - b.x[i];
+        double dy = b.y[j] - b.y[i];
+        double dz = b.z[j] - b.z[i];
+        double iR = b.radius[i];
+        double jR = b.radius[j];
+        double reach = iR + jR;
+        double distSquared = dx * dx + dy * dy + dz * dz;
+        if (distSquared > reach * reach) {
+            return false;
+        }
+        double dist = distSquared == 0d ? Math.min(iR, jR) / 100.0d : Math.sqrt(distSquared);
+        double nx = dx / dist;
+        double ny = dy / dist;
+        double nz = dz / dist;
+        double overlap = reach - dist;
+
+        double iMass = b.mass[i];
+        double jMass = b.mass[j];
+
+        double totalMass = iMass + jMass;
+        double iShare = overlap * iMass / totalMass;
+        double jShare = overlap * jMass / totalMass;
+
+        double vRelN = (b.vx[i] - b.vx[j]) * nx + (b.vy[i] - b.vy[j]) * ny + (b.vz[i] - b.vz[j]) * nz;
+        double rawImpulse = -(1 + Math.E) * vRelN / (b.inverseMass[i] + b.inverseMass[j]);
+        double impulse = brake * rawImpulse;
+
+        if (iMove) {
+            double iImpulse = impulse * b.inverseMass[j];
+            b.x[i] -= nx * iShare;
+            b.y[i] -= ny * iShare;
+            b.z[i] -= nz * iShare;
+            b.ix[i] += nx * iImpulse;
+            b.iy[i] += ny * iImpulse;
+            b.iz[i] += nz * iImpulse;
+        }
+        if (jMove) {
+            double jImpulse = impulse * b.inverseMass[i];
+            b.x[j] += nx * jShare;
+            b.y[j] += ny * jShare;
+            b.z[j] += nz * jShare;
+            b.ix[j] -= nx * jImpulse;
+            b.iy[j] -= ny * jImpulse;
+            b.iz[j] -= nz * jImpulse;
+        }
+        return true;
+    }
+}
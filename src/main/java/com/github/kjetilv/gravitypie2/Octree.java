@@ -0,0 +1,300 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Barnes-Hut solver. The octree is rebuilt from scratch in {@link #prepare(Bodies)} on every step, into node
+ * arrays that are reused between steps and only grow when the tree outgrows them.
+ * <p>
+ * All bodies pull with the same strength, so a node is summarized by its body count and the mean position of its
+ * bodies. A node is opened when its side divided by the distance to that mean position is at least the opening
+ * angle θ, or when the body being pulled lies inside it. θ = 0 degenerates to the direct sum.
+ */
+final class Octree implements Gravity {
+
+    private final double theta;
+
+    private int nodeCount;
+
+    private double[] centerX;
+
+    private double[] centerY;
+
+    private double[] centerZ;
+
+    private double[] half;
+
+    private double[] massX;
+
+    private double[] massY;
+
+    private double[] massZ;
+
+    private int[] bodyCount;
+
+    private int[] firstChild;
+
+    private int[] firstBody;
+
+    private int[] nextBody;
+
+    Octree(double theta) {
+        if (theta < 0) {
+            throw new IllegalArgumentException("Negative opening angle: " + theta);
+        }
+        this.theta = theta;
+        allocateNodes(INITIAL_NODES);
+        nextBody = new int[0];
+    }
+
+    @Override
+    public void prepare(Bodies bodies) {
+        int count = bodies.count;
+        if (nextBody.length < count) {
+            nextBody = new int[count];
+        }
+        nodeCount = 0;
+        if (count == 0) {
+            return;
+        }
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] z = bodies.z;
+
+        double minX = x[0], maxX = x[0];
+        double minY = y[0], maxY = y[0];
+        double minZ = z[0], maxZ = z[0];
+        for (int i = 1; i < count; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+            minZ = Math.min(minZ, z[i]);
+            maxZ = Math.max(maxZ, z[i]);
+        }
+        double size = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+        int root = newNode(
+            (minX + maxX) / 2,
+            (minY + maxY) / 2,
+            (minZ + maxZ) / 2,
+            Math.max(size, MIN_SIZE) / 2 * (1 + SLACK)
+        );
+
+        for (int i = 0; i < count; i++) {
+            insert(root, i, x, y, z);
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            int n = bodyCount[node];
+            if (n > 0) {
+                massX[node] /= n;
+                massY[node] /= n;
+                massZ[node] /= n;
+            }
+        }
+    }
+
+    @Override
+    public void pull(Bodies bodies, int i, double g) {
+        bodies.ax[i] = 0d;
+        bodies.ay[i] = 0d;
+        bodies.az[i] = 0d;
+        if (nodeCount > 0) {
+            visit(0, bodies, i, g, false);
+        }
+    }
+
+    @Override
+    public void pullWithPotential(Bodies bodies, int i, double g) {
+        bodies.ax[i] = 0d;
+        bodies.ay[i] = 0d;
+        bodies.az[i] = 0d;
+        bodies.potential[i] = 0d;
+        if (nodeCount > 0) {
+            visit(0, bodies, i, g, true);
+        }
+        bodies.potential[i] *= g / 4;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[θ=" + theta + " nodes=" + nodeCount + "]";
+    }
+
+    /**
+     * @param potential Whether to add the logs of the squared distances to {@link Bodies#potential}
+     */
+    private void visit(int node, Bodies bodies, int i, double g, boolean potential) {
+        int n = bodyCount[node];
+        if (n == 0) {
+            return;
+        }
+        double px = bodies.x[i];
+        double py = bodies.y[i];
+        double pz = bodies.z[i];
+        int child = firstChild[node];
+        if (child < 0) {
+            double pullX = 0d;
+            double pullY = 0d;
+            double pullZ = 0d;
+            double logs = 0d;
+            for (int j = firstBody[node]; j >= 0; j = nextBody[j]) {
+                if (j != i) {
+                    double dx = bodies.x[j] - px;
+                    double dy = bodies.y[j] - py;
+                    double dz = bodies.z[j] - pz;
+                    double distSquared = dx * dx + dy * dy + dz * dz;
+                    double force = g / distSquared;
+                    pullX += dx * force;
+                    pullY += dy * force;
+                    pullZ += dz * force;
+                    if (potential) {
+                        logs += Math.log(distSquared);
+                    }
+                }
+            }
+            bodies.ax[i] += pullX;
+            bodies.ay[i] += pullY;
+            bodies.az[i] += pullZ;
+            if (potential) {
+                bodies.potential[i] += logs;
+            }
+            return;
+        }
+        double dx = massX[node] - px;
+        double dy = massY[node] - py;
+        double dz = massZ[node] - pz;
+        double distSquared = dx * dx + dy * dy + dz * dz;
+        double side = 2 * half[node];
+        if (side * side < theta * theta * distSquared && !contains(node, px, py, pz)) {
+            double force = g * n / distSquared;
+            bodies.ax[i] += dx * force;
+            bodies.ay[i] += dy * force;
+            bodies.az[i] += dz * force;
+            if (potential) {
+                bodies.potential[i] += n * Math.log(distSquared);
+            }
+            return;
+        }
+        for (int c = child; c < child + 8; c++) {
+            visit(c, bodies, i, g, potential);
+        }
+    }
+
+    private boolean contains(int node, double px, double py, double pz) {
+        double h = half[node];
+        return Math.abs(px - centerX[node]) <= h &&
+               Math.abs(py - centerY[node]) <= h &&
+               Math.abs(pz - centerZ[node]) <= h;
+    }
+
+    private void insert(int root, int i, double[] x, double[] y, double[] z) {
+        int node = root;
+        int depth = 0;
+        while (true) {
+            bodyCount[node]++;
+            massX[node] += x[i];
+            massY[node] += y[i];
+            massZ[node] += z[i];
+            int child = firstChild[node];
+            if (child < 0) {
+                nextBody[i] = firstBody[node];
+                firstBody[node] = i;
+                if (bodyCount[node] > LEAF_CAPACITY && depth < MAX_DEPTH) {
+                    split(node, depth, x, y, z);
+                }
+                return;
+            }
+            node = child + octant(node, x[i], y[i], z[i]);
+            depth++;
+        }
+    }
+
+    private void split(int node, int depth, double[] x, double[] y, double[] z) {
+        double h = half[node] / 2;
+        int child = nodeCount;
+        for (int o = 0; o < 8; o++) {
+            newNode(
+                centerX[node] + ((o & 1) == 0 ? -h : h),
+                centerY[node] + ((o & 2) == 0 ? -h : h),
+                centerZ[node] + ((o & 4) == 0 ? -h : h),
+                h
+            );
+        }
+        firstChild[node] = child;
+        int j = firstBody[node];
+        firstBody[node] = -1;
+        while (j >= 0) {
+            int next = nextBody[j];
+            int target = child + octant(node, x[j], y[j], z[j]);
+            bodyCount[target]++;
+            massX[target] += x[j];
+            massY[target] += y[j];
+            massZ[target] += z[j];
+            nextBody[j] = firstBody[target];
+            firstBody[target] = j;
+            j = next;
+        }
+        if (depth + 1 < MAX_DEPTH) {
+            for (int c = child; c < child + 8; c++) {
+                if (bodyCount[c] > LEAF_CAPACITY) {
+                    split(c, depth + 1, x, y, z);
+                }
+            }
+        }
+    }
+
+    private int octant(int node, double px, double py, double pz) {
+        return (px < centerX[node] ? 0 : 1) |
+               (py < centerY[node] ? 0 : 2) |
+               (pz < centerZ[node] ? 0 : 4);
+    }
+
+    private int newNode(double cx, double cy, double cz, double h) {
+        if (nodeCount == half.length) {
+            allocateNodes(half.length * 2);
+        }
+        int node = nodeCount++;
+        centerX[node] = cx;
+        centerY[node] = cy;
+        centerZ[node] = cz;
+        half[node] = h;
+        massX[node] = 0d;
+        massY[node] = 0d;
+        massZ[node] = 0d;
+        bodyCount[node] = 0;
+        firstChild[node] = -1;
+        firstBody[node] = -1;
+        return node;
+    }
+
+    private void allocateNodes(int capacity) {
+        centerX = grow(centerX, capacity);
+        centerY = grow(centerY, capacity);
+        centerZ = grow(centerZ, capacity);
+        half = grow(half, capacity);
+        massX = grow(massX, capacity);
+        massY = grow(massY, capacity);
+        massZ = grow(massZ, capacity);
+        bodyCount = grow(bodyCount, capacity);
+        firstChild = grow(firstChild, capacity);
+        firstBody = grow(firstBody, capacity);
+    }
+
+    private static final int INITIAL_NODES = 1024;
+
+    private static final int LEAF_CAPACITY = 8;
+
+    private static final int MAX_DEPTH = 32;
+
+    private static final double MIN_SIZE = 1d;
+
+    private static final double SLACK = 1e-6;
+
+    private static double[] grow(double[] array, int capacity) {
+        return array == null ? new double[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        return array == null ? new int[capacity] : Arrays.copyOf(array, capacity);
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Command line options of the form {@code --name value} or {@code --name=value}. A bare {@code --name} is a
+ * {@code true} flag. Options not given on the command line fall back to the {@code gravitypie.*} system properties.
+ */
+final class Options {
+
+    private final Map<String, String> values;
+
+    private Options(Map<String, String> values) {
+        this.values = Map.copyOf(values);
+    }
+
+    String string(String name, String defaultValue) {
+        String value = values.get(name);
+        return value == null ? Props.string(name, defaultValue) : value;
+    }
+
+    int integer(String name, int defaultValue) {
+        String value = values.get(name);
+        return value == null ? Props.integer(name, defaultValue) : Integer.parseInt(value.replace("_", ""));
+    }
+
+    long longInteger(String name, long defaultValue) {
+        String value = string(name, null);
+        return value == null ? defaultValue : Long.parseLong(value.replace("_", ""));
+    }
+
+    double decimal(String name, double defaultValue) {
+        String value = values.get(name);
+        return value == null ? Props.decimal(name, defaultValue) : Double.parseDouble(value);
+    }
+
+    boolean flag(String name, boolean defaultValue) {
+        String value = values.get(name);
+        return value == null ? Props.flag(name, defaultValue) : Boolean.parseBoolean(value);
+    }
+
+    <E extends Enum<E>> E choice(String name, E defaultValue) {
+        String value = values.get(name);
+        return value == null
+            ? Props.choice(name, defaultValue)
+            : Props.choice(name, value, defaultValue.getDeclaringClass());
+    }
+
+    boolean has(String name) {
+        return values.containsKey(name) || Props.string(name, null) != null;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + values;
+    }
+
+    static Options parse(String... args) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Expected --option, got: " + arg);
+            }
+            String option = arg.substring(2);
+            int eq = option.indexOf('=');
+            if (eq >= 0) {
+                values.put(option.substring(0, eq), option.substring(eq + 1));
+            } else if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                values.put(option, args[++i]);
+            } else {
+                values.put(option, "true");
+            }
+        }
+        return new Options(values);
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Runs per-body loops over a {@link ForkJoinPool}, or inline when configured with a single thread.
+ * <p>
+ * Loops handed to {@link #forEach(int, IntConsumer)} must only write to the slots of the body they are called
+ * with. Each body then sums its own contributions in its own fixed order, whatever thread it lands on, so the
+ * results are bit-for-bit the same for any thread count.
+ */
+final class Parallel implements AutoCloseable {
+
+    private final int threads;
+
+    private final ForkJoinPool pool;
+
+    Parallel(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        }
+        this.threads = threads;
+        this.pool = threads == 1 ? null : new ForkJoinPool(threads);
+    }
+
+    int threads() {
+        return threads;
+    }
+
+    void forEach(int count, IntConsumer action) {
+        if (pool == null || count < MIN_GRAIN * 2) {
+            for (int i = 0; i < count; i++) {
+                action.accept(i);
+            }
+            return;
+        }
+        int grain = Math.max(MIN_GRAIN, count / (threads * CHUNKS_PER_THREAD));
+        pool.invoke(new Chunk(action, 0, count, grain));
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[threads=" + threads + "]";
+    }
+
+    private static final int MIN_GRAIN = 64;
+
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final class Chunk extends RecursiveAction {
+
+        private final IntConsumer action;
+
+        private final int from;
+
+        private final int to;
+
+        private final int grain;
+
+        private Chunk(IntConsumer action, int from, int to, int grain) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                for (int i = from; i < to; i++) {
+                    action.accept(i);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(
+                    new Chunk(action, from, mid, grain),
+                    new Chunk(action, mid, to, grain)
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.kjetilv.gravitypie2;
+
+/**
+ * The timed parts of a simulation step and of a rendered frame.
+ */
+enum Phase {
+
+    COLLISION,
+
+    COLLISION_IMPULSE,
+
+    PULLS,
+
+    INTEGRATION,
+
+    WALL_BOUNCE,
+
+    STEP,
+
+    SPHERE_MOVE,
+
+    OPACITY,
+
+    LEVEL_OF_DETAIL,
+
+    LIGHT_CAMERA,
+
+    FRAME
+}
@@ -0,0 +1,23 @@
+package com.github.kjetilv.gravitypie2;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event for one timed {@link Phase}.
+ */
+@Name("com.github.kjetilv.gravitypie2.Phase")
+@Label("Simulation Phase")
+@Category("Gravitypie")
+@StackTrace(false)
+final class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Step")
+    long step;
+
+    @Label("Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanos;
+}
@@ -0,0 +1,74 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Values for the five {@link Slidouble} knobs, as bound to the digit keys.
+ */
+record Preset(
+    double gravConstant,
+    double airBrake,
+    double collisionBrake,
+    double wallBrake,
+    double gravityWell
+) {
+
+    static final List<Preset> ALL = List.of(
+        new Preset(
+            0d,
+            1d,
+            0d,
+            1d,
+            0d
+        ),
+        new Preset(
+            .04d,
+            .07d,
+            .23d,
+            .32d,
+            0d
+        ),
+        new Preset(
+            .01,
+            .1d,
+            0d,
+            .85d,
+            0d
+        ),
+        new Preset(
+            .04512,
+            .03,
+            .71,
+            0d,
+            0d
+        ),
+        new Preset(
+            0.15662d,
+            .03d,
+            0.94d,
+            0d,
+            0d
+        ),
+        new Preset(
+            0.07,
+            0d,
+            0.68d,
+            0d,
+            0d
+        ),
+        new Preset(
+            .01021d,
+            0.11d,
+            .33d,
+            .06d,
+            0d
+        )
+    );
+
+    static Preset get(int i) {
+        if (i < 0 || i >= ALL.size()) {
+            throw new IllegalArgumentException("No preset " + i + ", expected 0-" + (ALL.size() - 1));
+        }
+        return ALL.get(i);
+    }
+}
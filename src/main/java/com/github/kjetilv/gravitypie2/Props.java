@@ -0,0 +1,56 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Reads {@code gravitypie.*} system properties, for the switches that have no key binding.
+ */
+final class Props {
+
+    static String string(String name, String defaultValue) {
+        String value = System.getProperty(PREFIX + name);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    static int integer(String name, int defaultValue) {
+        String value = string(name, null);
+        return value == null ? defaultValue : Integer.parseInt(value.replace("_", ""));
+    }
+
+    static double decimal(String name, double defaultValue) {
+        String value = string(name, null);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    static boolean flag(String name, boolean defaultValue) {
+        String value = string(name, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    static <E extends Enum<E>> E choice(String name, E defaultValue) {
+        String value = string(name, null);
+        return value == null ? defaultValue : choice(name, value, defaultValue.getDeclaringClass());
+    }
+
+    /**
+     * @return The constant named by the value, in any case and with dashes for underscores
+     * @throws IllegalArgumentException If there is no such constant, listing the ones there are
+     */
+    static <E extends Enum<E>> E choice(String name, String value, Class<E> type) {
+        String constant = value.toUpperCase(Locale.ROOT).replace('-', '_');
+        return Arrays.stream(type.getEnumConstants())
+            .filter(candidate -> candidate.name().equals(constant))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException(
+                "Unknown " + name + " " + value + ", expected one of: " +
+                Arrays.stream(type.getEnumConstants())
+                    .map(candidate -> candidate.name().toLowerCase(Locale.ROOT).replace('_', '-'))
+                    .collect(Collectors.joining(", "))
+            ));
+    }
+
+    private Props() {
+    }
+
+    private static final String PREFIX = "gravitypie.";
+}
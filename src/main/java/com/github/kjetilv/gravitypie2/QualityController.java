@@ -0,0 +1,120 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Holds the render cost of a frame within a budget by stepping quality down when the smoothed cost has been over
+ * budget for a while, and back up when there has been plenty of headroom for longer. The asymmetry keeps it from
+ * oscillating between two levels.
+ */
+final class QualityController {
+
+    private final long budgetNanos;
+
+    private final AtomicLong levelGauge;
+
+    private final AtomicLong changesGauge;
+
+    private Level level = Level.FULL;
+
+    private double smoothedNanos;
+
+    private int overBudget;
+
+    private int underBudget;
+
+    QualityController(long budgetNanos, Metrics metrics) {
+        if (budgetNanos <= 0) {
+            throw new IllegalArgumentException("Invalid budget: " + budgetNanos);
+        }
+        this.budgetNanos = budgetNanos;
+        this.levelGauge = metrics.gauge("quality level");
+        this.changesGauge = metrics.gauge("quality changes");
+    }
+
+    Level level() {
+        return level;
+    }
+
+    /**
+     * @param frameNanos Cost of the frame just rendered
+     * @return True if the quality level changed
+     */
+    boolean frame(long frameNanos) {
+        smoothedNanos = smoothedNanos == 0d
+            ? frameNanos
+            : smoothedNanos + SMOOTHING * (frameNanos - smoothedNanos);
+        if (smoothedNanos > budgetNanos) {
+            underBudget = 0;
+            if (++overBudget >= DEGRADE_FRAMES && level.ordinal() < Level.values().length - 1) {
+                return change(Level.values()[level.ordinal() + 1]);
+            }
+        } else if (smoothedNanos < budgetNanos * HEADROOM) {
+            overBudget = 0;
+            if (++underBudget >= RESTORE_FRAMES && level.ordinal() > 0) {
+                return change(Level.values()[level.ordinal() - 1]);
+            }
+        } else {
+            overBudget = 0;
+            underBudget = 0;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + level + ", budget " + budgetNanos / 1_000 + "µs]";
+    }
+
+    private boolean change(Level level) {
+        this.level = level;
+        overBudget = 0;
+        underBudget = 0;
+        levelGauge.set(level.ordinal());
+        changesGauge.incrementAndGet();
+        return true;
+    }
+
+    private static final double SMOOTHING = 0.1d;
+
+    private static final double HEADROOM = 0.6d;
+
+    private static final int DEGRADE_FRAMES = 30;
+
+    private static final int RESTORE_FRAMES = 180;
+
+    /**
+     * Quality levels, each one including the savings of those before it.
+     */
+    enum Level {
+
+        FULL,
+
+        /**
+         * Update the opacity of half the bodies per frame, alternating.
+         */
+        HALF_OPACITY,
+
+        /**
+         * Also move bodies further away than the camera's orbit only every other frame.
+         */
+        HALF_DISTANT,
+
+        /**
+         * Also drop every sphere one level of detail.
+         */
+        COARSE;
+
+        boolean skipOpacity(int i, long frame) {
+            return this != FULL && ((i + frame) & 1) == 1;
+        }
+
+        boolean skipDistant(long frame) {
+            return compareTo(HALF_DISTANT) >= 0 && (frame & 1) == 1;
+        }
+
+        boolean coarse() {
+            return this == COARSE;
+        }
+    }
+}
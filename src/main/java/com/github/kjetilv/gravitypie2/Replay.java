@@ -0,0 +1,72 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Plays a {@link Trajectory} back in place of the {@link Simulation}, at any speed in frames per render, forwards or
+ * backwards. Playback stops at either end. Called from the FX thread only.
+ */
+final class Replay implements AutoCloseable {
+
+    private final Trajectory trajectory;
+
+    private final Snapshot snapshot;
+
+    private double position;
+
+    private double speed;
+
+    private double pausedSpeed;
+
+    Replay(Trajectory trajectory, double speed) {
+        this.trajectory = Objects.requireNonNull(trajectory, "trajectory");
+        this.snapshot = new Snapshot(trajectory.res().length);
+        this.speed = speed;
+        this.position = speed < 0 ? trajectory.last() : trajectory.first();
+    }
+
+    World world() {
+        return trajectory.world();
+    }
+
+    Re[] res() {
+        return trajectory.res();
+    }
+
+    Snapshot next() {
+        trajectory.read(Math.round(position), snapshot);
+        position = Math.clamp(position + speed, trajectory.first(), trajectory.last());
+        return snapshot;
+    }
+
+    double speed() {
+        return speed;
+    }
+
+    void faster() {
+        speed += 1d;
+    }
+
+    void slower() {
+        speed -= 1d;
+    }
+
+    void togglePause() {
+        if (speed == 0d) {
+            speed = pausedSpeed;
+        } else {
+            pausedSpeed = speed;
+            speed = 0d;
+        }
+    }
+
+    @Override
+    public void close() {
+        trajectory.close();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + trajectory + " at " + Math.round(position) + ", speed " + speed + "]";
+    }
+}
@@ -17,10 +17,6 @@ import static javafx.scene.transform.Rotate.Z_AXIS;
 
 final class Shapes {
 
-    public static final double TWO_THIRDS = 2.0 / 3;
-
-    public static final double THIRD = 1.0 / 3;
-
     static Group createWireBox(double width, double height, double depth) {
         double x = width / 2;
         double y = height / 2;
@@ -49,23 +45,6 @@ final class Shapes {
                     r.add(g).add(b))));
     }
 
-    static Re.Color color(int i, int count) {
-        double ratio = 1d * i / count;
-        double rads = ratio * 3 * Math.PI;
-        int phase = ratio < THIRD ? 0
-            : ratio < TWO_THIRDS ? 1
-                : 2;
-        double r = positiveAngle(rads);
-        double g = positiveAngle(rads + Math.PI / 2);
-        double b = positiveAngle(rads + Math.PI);
-        return new Re.Color(
-            phase == 0 ? PRIMARY_RANGE.scale(r) : COLOUR_RANGE.scale(r),
-            phase == 1 ? PRIMARY_RANGE.scale(g) : COLOUR_RANGE.scale(g),
-            phase == 2 ? PRIMARY_RANGE.scale(b) : COLOUR_RANGE.scale(b),
-            1d
-        );
-    }
-
     static <T> T get(int i, int count, List<T> list) {
         double point = 1d * i / count;
         int index = (int) (point * list.size());
@@ -75,8 +54,6 @@ final class Shapes {
     private Shapes() {
     }
 
-    private static final Range PRIMARY_RANGE = new Range(0.2, 0.95);
-
     private static final Range COLOUR_RANGE = new Range(0.1, 0.85);
 
     private static final double WIRE_THICK = 1.2;
@@ -112,8 +89,4 @@ final class Shapes {
         }
         return cyl;
     }
-
-    private static double positiveAngle(double angle) {
-        return Math.max(0, Math.cos(angle));
-    }
 }
@@ -0,0 +1,138 @@
+package com.github.kjetilv.gravitypie2;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The direct sum, computed {@link #SPECIES lanes} of source bodies at a time with the incubating Vector API, with a
+ * scalar tail for the rest. The pull's strength factor is applied once to the sum, instead of once per source.
+ * <p>
+ * Only load this class when {@link Gravity.Solver#vectorApi()} says the {@code jdk.incubator.vector} module is
+ * present.
+ */
+final class SimdGravity implements Gravity {
+
+    @Override
+    public void pull(Bodies bodies, int i, double g) {
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] z = bodies.z;
+        int count = bodies.count;
+        double px = x[i];
+        double py = y[i];
+        double pz = z[i];
+
+        DoubleVector pxs = DoubleVector.broadcast(SPECIES, px);
+        DoubleVector pys = DoubleVector.broadcast(SPECIES, py);
+        DoubleVector pzs = DoubleVector.broadcast(SPECIES, pz);
+        DoubleVector ones = DoubleVector.broadcast(SPECIES, 1d);
+        DoubleVector sumX = DoubleVector.zero(SPECIES);
+        DoubleVector sumY = DoubleVector.zero(SPECIES);
+        DoubleVector sumZ = DoubleVector.zero(SPECIES);
+
+        int lanes = SPECIES.length();
+        int upper = SPECIES.loopBound(count);
+        int j = 0;
+        for (; j < upper; j += lanes) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, x, j).sub(pxs);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, y, j).sub(pys);
+            DoubleVector dz = DoubleVector.fromArray(SPECIES, z, j).sub(pzs);
+            DoubleVector distSquared = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+            DoubleVector inverse = ones.div(distSquared);
+            if (i >= j && i < j + lanes) {
+                inverse = inverse.withLane(i - j, 0d);
+            }
+            sumX = dx.fma(inverse, sumX);
+            sumY = dy.fma(inverse, sumY);
+            sumZ = dz.fma(inverse, sumZ);
+        }
+
+        double pullX = sumX.reduceLanes(VectorOperators.ADD);
+        double pullY = sumY.reduceLanes(VectorOperators.ADD);
+        double pullZ = sumZ.reduceLanes(VectorOperators.ADD);
+        for (; j < count; j++) {
+            if (j != i) {
+                double dx = x[j] - px;
+                double dy = y[j] - py;
+                double dz = z[j] - pz;
+                double inverse = 1d / (dx * dx + dy * dy + dz * dz);
+                pullX += dx * inverse;
+                pullY += dy * inverse;
+                pullZ += dz * inverse;
+            }
+        }
+        bodies.ax[i] = pullX * g;
+        bodies.ay[i] = pullY * g;
+        bodies.az[i] = pullZ * g;
+    }
+
+    @Override
+    public void pullWithPotential(Bodies bodies, int i, double g) {
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] z = bodies.z;
+        int count = bodies.count;
+        double px = x[i];
+        double py = y[i];
+        double pz = z[i];
+
+        DoubleVector pxs = DoubleVector.broadcast(SPECIES, px);
+        DoubleVector pys = DoubleVector.broadcast(SPECIES, py);
+        DoubleVector pzs = DoubleVector.broadcast(SPECIES, pz);
+        DoubleVector ones = DoubleVector.broadcast(SPECIES, 1d);
+        DoubleVector sumX = DoubleVector.zero(SPECIES);
+        DoubleVector sumY = DoubleVector.zero(SPECIES);
+        DoubleVector sumZ = DoubleVector.zero(SPECIES);
+        DoubleVector sumLogs = DoubleVector.zero(SPECIES);
+
+        int lanes = SPECIES.length();
+        int upper = SPECIES.loopBound(count);
+        int j = 0;
+        for (; j < upper; j += lanes) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, x, j).sub(pxs);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, y, j).sub(pys);
+            DoubleVector dz = DoubleVector.fromArray(SPECIES, z, j).sub(pzs);
+            DoubleVector distSquared = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+            DoubleVector inverse = ones.div(distSquared);
+            DoubleVector logs = distSquared.lanewise(VectorOperators.LOG);
+            if (i >= j && i < j + lanes) {
+                inverse = inverse.withLane(i - j, 0d);
+                logs = logs.withLane(i - j, 0d);
+            }
+            sumX = dx.fma(inverse, sumX);
+            sumY = dy.fma(inverse, sumY);
+            sumZ = dz.fma(inverse, sumZ);
+            sumLogs = sumLogs.add(logs);
+        }
+
+        double pullX = sumX.reduceLanes(VectorOperators.ADD);
+        double pullY = sumY.reduceLanes(VectorOperators.ADD);
+        double pullZ = sumZ.reduceLanes(VectorOperators.ADD);
+        double logs = sumLogs.reduceLanes(VectorOperators.ADD);
+        for (; j < count; j++) {
+            if (j != i) {
+                double dx = x[j] - px;
+                double dy = y[j] - py;
+                double dz = z[j] - pz;
+                double distSquared = dx * dx + dy * dy + dz * dz;
+                double inverse = 1d / distSquared;
+                pullX += dx * inverse;
+                pullY += dy * inverse;
+                pullZ += dz * inverse;
+                logs += Math.log(distSquared);
+            }
+        }
+        bodies.ax[i] = pullX * g;
+        bodies.ay[i] = pullY * g;
+        bodies.az[i] = pullZ * g;
+        bodies.potential[i] = g * logs / 4;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + SPECIES + "]";
+    }
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+}
@@ -0,0 +1,93 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Runs the physics on a dedicated thread at a fixed step rate, publishing the body positions after each step.
+ * If a step overruns, the following steps are run back to back to catch up, but never more than
+ * {@link #MAX_CATCH_UP} of them; beyond that, the simulation slows down instead of spiralling.
+ */
+final class Simulation {
+
+    private final Bodies bodies;
+
+    private final Runnable step;
+
+    private final long periodNanos;
+
+    private final SnapshotBuffer buffer;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private Thread thread;
+
+    private long steps;
+
+    Simulation(Bodies bodies, Runnable step, double stepsPerSecond) {
+        if (stepsPerSecond <= 0) {
+            throw new IllegalArgumentException("Invalid step rate: " + stepsPerSecond);
+        }
+        this.bodies = bodies;
+        this.step = step;
+        this.periodNanos = Math.round(1_000_000_000d / stepsPerSecond);
+        this.buffer = new SnapshotBuffer(bodies.count);
+        buffer.back().copyFrom(bodies, 0);
+        buffer.publish();
+    }
+
+    void start() {
+        if (running.compareAndSet(false, true)) {
+            thread = Thread.ofPlatform()
+                .name("simulation")
+                .daemon(true)
+                .start(this::run);
+        }
+    }
+
+    /**
+     * Stops the thread, and waits for it to finish the step in progress, so that anything the steps write to may be
+     * closed when this returns.
+     */
+    void stop() {
+        if (running.compareAndSet(true, false)) {
+            thread.interrupt();
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    Snapshot latest() {
+        return buffer.latest();
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        while (running.get()) {
+            step.run();
+            steps++;
+            buffer.back().copyFrom(bodies, steps);
+            buffer.publish();
+
+            next += periodNanos;
+            long now = System.nanoTime();
+            if (now - next > MAX_CATCH_UP * periodNanos) {
+                next = now;
+            }
+            long wait = next - now;
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+    }
+
+    private static final int MAX_CATCH_UP = 5;
+}
@@ -1,10 +1,15 @@
 package com.github.kjetilv.gravitypie2;
 
+/**
+ * A named parameter, set from the FX thread and read by the simulation thread.
+ */
 final class Slidouble {
 
     private final String name;
 
-    private double value;
+    private volatile double value;
+
+    private volatile int version;
 
     Slidouble(String name) {
         this(name, 0.0d);
@@ -24,7 +29,17 @@ final class Slidouble {
     }
 
     public void value(double value) {
-        this.value = value;
+        if (this.value != value) {
+            this.value = value;
+            version++;
+        }
+    }
+
+    /**
+     * @return A number that changes whenever the value does
+     */
+    int version() {
+        return version;
     }
 
     public double mirrorValue() {
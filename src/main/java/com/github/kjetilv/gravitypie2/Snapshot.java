@@ -0,0 +1,44 @@
+package com.github.kjetilv.gravitypie2;
+
+/**
+ * Body positions as of a finished simulation step, for the render side to read.
+ */
+final class Snapshot {
+
+    final double[] x;
+
+    final double[] y;
+
+    final double[] z;
+
+    final boolean[] asleep;
+
+    private long step;
+
+    Snapshot(int count) {
+        x = new double[count];
+        y = new double[count];
+        z = new double[count];
+        asleep = new boolean[count];
+    }
+
+    long step() {
+        return step;
+    }
+
+    void step(long step) {
+        this.step = step;
+    }
+
+    double distanceToOrigo(int i) {
+        return Math.sqrt(x[i] * x[i] + y[i] * y[i] + z[i] * z[i]);
+    }
+
+    void copyFrom(Bodies bodies, long step) {
+        System.arraycopy(bodies.x, 0, x, 0, bodies.count);
+        System.arraycopy(bodies.y, 0, y, 0, bodies.count);
+        System.arraycopy(bodies.z, 0, z, 0, bodies.count);
+        System.arraycopy(bodies.asleep, 0, asleep, 0, bodies.count);
+        this.step = step;
+    }
+}
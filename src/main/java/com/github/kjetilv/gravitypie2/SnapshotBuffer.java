@@ -0,0 +1,55 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Lock-free triple buffer between one writer and one reader. The writer fills its back buffer and swaps it with
+ * the middle one. The reader swaps the middle one for its front buffer only when something new was published,
+ * so neither side ever waits for the other, and the reader never sees a half-written snapshot.
+ */
+final class SnapshotBuffer {
+
+    private final Snapshot[] snapshots;
+
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    private int back = 0;
+
+    private int front = 2;
+
+    SnapshotBuffer(int count) {
+        snapshots = new Snapshot[] {new Snapshot(count), new Snapshot(count), new Snapshot(count)};
+    }
+
+    /**
+     * Writer side.
+     *
+     * @return The buffer to fill before the next {@link #publish()}
+     */
+    Snapshot back() {
+        return snapshots[back];
+    }
+
+    /**
+     * Writer side. Hands the back buffer over to the reader.
+     */
+    void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    /**
+     * Reader side.
+     *
+     * @return The most recently published snapshot
+     */
+    Snapshot latest() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX;
+        }
+        return snapshots[front];
+    }
+
+    private static final int INDEX = 0b011;
+
+    private static final int FRESH = 0b100;
+}
@@ -0,0 +1,141 @@
+package com.github.kjetilv.gravitypie2;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid broad phase for sphere collisions. Bodies are bucketed by the cell they are in, hashed into a table
+ * of buckets that is rebuilt with a counting sort on every {@link #build(Bodies)}. With a cell size of at least the
+ * largest diameter, touching spheres are always in the same or neighbouring cells, so only those pairs are passed on
+ * to the narrow phase.
+ */
+final class SpatialHash {
+
+    private final double cellSize;
+
+    private final double inverseCellSize;
+
+    private final int mask;
+
+    private final int[] cellX;
+
+    private final int[] cellY;
+
+    private final int[] cellZ;
+
+    private final int[] bucketOf;
+
+    private final int[] bucketStart;
+
+    private final int[] sorted;
+
+    private int count;
+
+    SpatialHash(double cellSize, int capacity) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Invalid cell size: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1d / cellSize;
+        int buckets = Integer.highestOneBit(Math.max(16, capacity * 2 - 1)) << 1;
+        this.mask = buckets - 1;
+        this.cellX = new int[capacity];
+        this.cellY = new int[capacity];
+        this.cellZ = new int[capacity];
+        this.bucketOf = new int[capacity];
+        this.bucketStart = new int[buckets + 1];
+        this.sorted = new int[capacity];
+    }
+
+    void build(Bodies bodies) {
+        build(bodies.x, bodies.y, bodies.z, bodies.count);
+    }
+
+    /**
+     * @param x     X coordinates
+     * @param y     Y coordinates
+     * @param z     Z coordinates
+     * @param count Bodies, at the start of the arrays
+     */
+    void build(double[] x, double[] y, double[] z, int count) {
+        this.count = count;
+        if (count > sorted.length) {
+            throw new IllegalStateException("Capacity " + sorted.length + " exceeded: " + count);
+        }
+        Arrays.fill(bucketStart, 0);
+        for (int i = 0; i < count; i++) {
+            int cx = cell(x[i]);
+            int cy = cell(y[i]);
+            int cz = cell(z[i]);
+            cellX[i] = cx;
+            cellY[i] = cy;
+            cellZ[i] = cz;
+            int bucket = bucket(cx, cy, cz);
+            bucketOf[i] = bucket;
+            bucketStart[bucket + 1]++;
+        }
+        for (int b = 0; b < mask + 1; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        for (int i = 0; i < count; i++) {
+            int bucket = bucketOf[i];
+            sorted[bucketStart[bucket]++] = i;
+        }
+        for (int b = mask; b > 0; b--) {
+            bucketStart[b] = bucketStart[b - 1];
+        }
+        bucketStart[0] = 0;
+    }
+
+    /**
+     * Visits every pair {@code i < j} in the same or neighbouring cells exactly once, in ascending order of
+     * {@code i}. Hash collisions are filtered out by comparing the actual cells.
+     *
+     * @param pairs Narrow phase
+     */
+    void forEachPair(Pairs pairs) {
+        for (int i = 0; i < count; i++) {
+            int cx = cellX[i];
+            int cy = cellY[i];
+            int cz = cellZ[i];
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        int nx = cx + dx;
+                        int ny = cy + dy;
+                        int nz = cz + dz;
+                        int bucket = bucket(nx, ny, nz);
+                        for (int k = bucketStart[bucket], end = bucketStart[bucket + 1]; k < end; k++) {
+                            int j = sorted[k];
+                            if (j > i && cellX[j] == nx && cellY[j] == ny && cellZ[j] == nz) {
+                                pairs.pair(i, j);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    int capacity() {
+        return sorted.length;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[cell=" + cellSize + " buckets=" + (mask + 1) + "]";
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate * inverseCellSize);
+    }
+
+    private int bucket(int cx, int cy, int cz) {
+        return (cx * 73_856_093 ^ cy * 19_349_663 ^ cz * 83_492_791) & mask;
+    }
+
+    @FunctionalInterface
+    interface Pairs {
+
+        void pair(int i, int j);
+    }
+}
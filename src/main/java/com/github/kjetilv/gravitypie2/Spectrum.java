@@ -0,0 +1,51 @@
+package com.github.kjetilv.gravitypie2;
+
+/**
+ * Spreads body colours over the spectrum, from red through green to blue.
+ */
+final class Spectrum {
+
+    static Re.Color color(int i, int count) {
+        double ratio = 1d * i / count;
+        double rads = ratio * 3 * Math.PI;
+        int phase = ratio < THIRD ? 0
+            : ratio < TWO_THIRDS ? 1
+                : 2;
+        double r = positiveAngle(rads);
+        double g = positiveAngle(rads + Math.PI / 2);
+        double b = positiveAngle(rads + Math.PI);
+        return new Re.Color(
+            phase == 0 ? PRIMARY_RANGE.scale(r) : COLOUR_RANGE.scale(r),
+            phase == 1 ? PRIMARY_RANGE.scale(g) : COLOUR_RANGE.scale(g),
+            phase == 2 ? PRIMARY_RANGE.scale(b) : COLOUR_RANGE.scale(b),
+            1d
+        );
+    }
+
+    /**
+     * Quantizes the spectrum position of body i down to one of a fixed number of buckets.
+     *
+     * @param i       Body
+     * @param count   Bodies
+     * @param buckets Buckets
+     * @return Bucket, to be passed to {@link #color(int, int)} along with {@code buckets}
+     */
+    static int bucket(int i, int count, int buckets) {
+        return Math.min(buckets - 1, (int) ((long) i * buckets / count));
+    }
+
+    private Spectrum() {
+    }
+
+    private static final double TWO_THIRDS = 2.0 / 3;
+
+    private static final double THIRD = 1.0 / 3;
+
+    private static final Range PRIMARY_RANGE = new Range(0.2, 0.95);
+
+    private static final Range COLOUR_RANGE = new Range(0.1, 0.85);
+
+    private static double positiveAngle(double angle) {
+        return Math.max(0, Math.cos(angle));
+    }
+}
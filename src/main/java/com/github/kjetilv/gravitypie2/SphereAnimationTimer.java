@@ -1,54 +1,35 @@
 package com.github.kjetilv.gravitypie2;
 
-import module java.base;
 import module javafx.controls;
 
-import java.time.Duration;
-
 final class SphereAnimationTimer extends AnimationTimer {
 
-    private final Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS).plusSeconds(5);
+    private final Runnable update;
 
-    private Duration total = Duration.ZERO;
+    private final Metrics metrics;
 
-    private long frames;
+    private final Runnable report;
 
-    private long lastSec = start.getEpochSecond();
+    private long lastReport;
 
-    private final Runnable update;
-
-    SphereAnimationTimer(Runnable update) {
+    SphereAnimationTimer(Runnable update, Metrics metrics, Runnable report) {
         this.update = update;
+        this.metrics = metrics;
+        this.report = report;
     }
 
     @Override
-    public void handle(long l) {
-        Instant before = Instant.now();
+    public void handle(long now) {
+        long allocated = metrics.allocatedBytes();
+        long start = metrics.start();
         update.run();
-        Instant after = Instant.now();
-        if (after.isAfter(start)) {
-            total = total.plus(Duration.between(before, after));
-            frames++;
-            long es = after.getEpochSecond();
-            if (es > lastSec) {
-                try {
-                    double msTotal = total.getSeconds() * 1_000d + total.getNano() / 1_000_000d;
-                    double microsPerFrame = msTotal / frames;
-                    long seconds = Duration.between(start, after).toSeconds();
-                    double fps = 1d * frames / seconds;
-                    double bugdet = 1000d / fps;
-                    System.out.printf(
-                        "%.1fms/frame %.1ffps [%.1fms]%n",
-                        microsPerFrame,
-                        fps,
-                        bugdet
-                    );
-                } finally {
-                    lastSec = es;
-                }
-            }
-        } else {
-            update.run();
+        metrics.lap(Phase.FRAME, start);
+        metrics.allocated(Phase.FRAME, allocated);
+        if (now - lastReport >= REPORT_INTERVAL_NANOS) {
+            lastReport = now;
+            report.run();
         }
     }
+
+    private static final long REPORT_INTERVAL_NANOS = 250_000_000L;
 }
@@ -0,0 +1,92 @@
+package com.github.kjetilv.gravitypie2;
+
+import javafx.scene.shape.TriangleMesh;
+
+import java.util.Arrays;
+
+/**
+ * Level-of-detail unit sphere meshes, shared by all bodies and scaled up to each body's radius. A body's level is
+ * picked from its projected radius on screen. To keep bodies near a threshold from flickering between two levels,
+ * a body only moves up a level when it is {@link #HYSTERESIS} beyond the threshold, and only down when it is that
+ * much below it.
+ */
+final class SphereLod {
+
+    private final TriangleMesh[] meshes;
+
+    /**
+     * Levels by projected radius, before any bias.
+     */
+    private final int[] levels;
+
+    /**
+     * Levels of the meshes the bodies have.
+     */
+    private final int[] shown;
+
+    SphereLod(int count) {
+        meshes = new TriangleMesh[DIVISIONS.length];
+        for (int level = 0; level < DIVISIONS.length; level++) {
+            meshes[level] = mesh(UnitSphere.of(DIVISIONS[level]));
+        }
+        levels = new int[count];
+        Arrays.fill(levels, TOP);
+        shown = new int[count];
+        Arrays.fill(shown, TOP);
+    }
+
+    TriangleMesh mesh(int i) {
+        return meshes[shown[i]];
+    }
+
+    /**
+     * @param i               Body
+     * @param projectedRadius Radius on screen, in pixels
+     * @param bias            Levels to drop, for reduced quality. Applies to the mesh only, not to the level the
+     *                        hysteresis starts from next time.
+     * @return The body's new mesh, or null if it keeps the one it has
+     */
+    TriangleMesh select(int i, double projectedRadius, int bias) {
+        int level = levels[i];
+        while (level < TOP && projectedRadius > THRESHOLDS[level] * (1 + HYSTERESIS)) {
+            level++;
+        }
+        while (level > 0 && projectedRadius < THRESHOLDS[level - 1] * (1 - HYSTERESIS)) {
+            level--;
+        }
+        levels[i] = level;
+        int biased = Math.max(0, level - bias);
+        if (biased == shown[i]) {
+            return null;
+        }
+        shown[i] = biased;
+        return meshes[biased];
+    }
+
+    /**
+     * Divisions per level, from coarsest to finest.
+     */
+    private static final int[] DIVISIONS = {8, 16, 32, 64};
+
+    /**
+     * Projected radius in pixels above which a body moves from a level to the next.
+     */
+    private static final double[] THRESHOLDS = {4d, 12d, 32d};
+
+    private static final int TOP = DIVISIONS.length - 1;
+
+    private static final double HYSTERESIS = 0.2d;
+
+    private static TriangleMesh mesh(UnitSphere sphere) {
+        TriangleMesh mesh = new TriangleMesh();
+        mesh.getPoints().setAll(sphere.points());
+        mesh.getTexCoords().setAll(0f, 0f);
+        int[] triangles = sphere.triangles();
+        int[] faces = new int[triangles.length * 2];
+        for (int t = 0; t < triangles.length; t++) {
+            faces[t * 2] = triangles[t];
+        }
+        mesh.getFaces().setAll(faces);
+        return mesh;
+    }
+}
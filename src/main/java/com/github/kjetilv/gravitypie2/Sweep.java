@@ -0,0 +1,287 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Runs the {@link Engine} headless for many settings of the five knobs, and writes a summary of each run to a CSV
+ * file as the runs finish. Each run gets a virtual thread, and at most {@code --concurrency} of them run at once.
+ * Every run starts from the same scatter, so the knobs are all that differ. Options:
+ * <pre>
+ * --mode M            grid or random (random)
+ * --samples N         Runs, for random (100)
+ * --levels L          Values per knob, for grid, which makes L⁵ runs (3)
+ * --gravConstant A:B  Range of the knob, or a single value to fix it (0:1)
+ * --airBrake A:B      Likewise, as for the other knobs: collisionBrake, wallBrake and gravityWell
+ * --count N           Bodies (300)
+ * --steps S           Steps per run (1000)
+ * --concurrency C     Runs at once (available processors)
+ * --seed S            Seed for the samples and the scatter (random)
+ * --out FILE          CSV file (sweep.csv)
+ * </pre>
+ * Engine settings such as {@code --gravity} and {@code --integrator} are taken as for {@link Headless}, except that
+ * each run has a single thread.
+ * <p>
+ * The CSV has a row per run, with the knobs, the steps per second, the collisions, the mean kinetic energy per body
+ * taking each body's mass as 1, the radius of gyration and the fraction of bodies touching another at the end.
+ */
+public final class Sweep {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Options options = Options.parse(args);
+        World world = new World(
+            options.integer("width", DEFAULT_WIDTH),
+            options.integer("height", DEFAULT_HEIGHT),
+            options.integer("depth", DEFAULT_WIDTH)
+        );
+        Engine.Settings settings = single(Engine.Settings.from(options));
+        int steps = options.integer("steps", DEFAULT_STEPS);
+        int concurrency = options.integer("concurrency", Runtime.getRuntime().availableProcessors());
+        long seed = options.longInteger("seed", System.nanoTime());
+        Path out = Path.of(options.string("out", DEFAULT_OUT));
+        Re[] res = Engine.res(options.integer("count", Engine.DEFAULT_COUNT));
+
+        List<Range> ranges = KNOBS.stream()
+            .map(knob -> range(options.string(knob, null)))
+            .toList();
+        List<Preset> presets = switch (options.choice("mode", Mode.RANDOM)) {
+            case GRID -> grid(ranges, options.integer("levels", DEFAULT_LEVELS));
+            case RANDOM -> random(ranges, options.integer("samples", DEFAULT_SAMPLES), seed);
+        };
+        System.out.printf(
+            "Seed %d: %d runs of %d bodies for %d steps, %d at a time, to %s%n",
+            seed,
+            presets.size(),
+            res.length,
+            steps,
+            concurrency,
+            out
+        );
+
+        Semaphore permits = new Semaphore(concurrency);
+        AtomicInteger done = new AtomicInteger();
+        try (
+            PrintWriter csv = new PrintWriter(Files.newBufferedWriter(out));
+            ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()
+        ) {
+            csv.println(HEADER);
+            for (int run = 0; run < presets.size(); run++) {
+                permits.acquire();
+                int index = run;
+                executor.submit(() -> {
+                    try {
+                        String row = run(index, presets.get(index), world, res, settings, seed, steps);
+                        synchronized (csv) {
+                            csv.println(row);
+                            csv.flush();
+                        }
+                        System.out.printf("%d/%d: %s%n", done.incrementAndGet(), presets.size(), row);
+                    } catch (RuntimeException e) {
+                        System.err.println("Run " + index + " failed: " + e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+    }
+
+    private Sweep() {
+    }
+
+    private static final int DEFAULT_WIDTH = 1920;
+
+    private static final int DEFAULT_HEIGHT = 1080;
+
+    private static final int DEFAULT_STEPS = 1_000;
+
+    private static final int DEFAULT_SAMPLES = 100;
+
+    private static final int DEFAULT_LEVELS = 3;
+
+    private static final String DEFAULT_OUT = "sweep.csv";
+
+    /**
+     * The knobs, in the order of the {@link Preset} components.
+     */
+    private static final List<String> KNOBS =
+        List.of("gravConstant", "airBrake", "collisionBrake", "wallBrake", "gravityWell");
+
+    /**
+     * The range of the knob sliders.
+     */
+    private static final Range KNOB_RANGE = new Range(0d, 1d);
+
+    private static final String HEADER = "run," + String.join(",", KNOBS) +
+                                         ",steps,seconds,steps per second,collisions,kinetic energy," +
+                                         "radius of gyration,touching";
+
+    private static String run(
+        int index,
+        Preset preset,
+        World world,
+        Re[] res,
+        Engine.Settings settings,
+        long seed,
+        int steps
+    ) {
+        try (Engine engine = new Engine(world, res, settings)) {
+            engine.scatter(seed);
+            engine.apply(preset);
+            long start = System.nanoTime();
+            for (int step = 0; step < steps; step++) {
+                engine.step();
+            }
+            long elapsed = System.nanoTime() - start;
+            Bodies bodies = engine.bodies();
+            return String.format(
+                Locale.ROOT,
+                "%d,%s,%s,%s,%s,%s,%d,%.3f,%.1f,%d,%.6g,%.6g,%.4f",
+                index,
+                preset.gravConstant(),
+                preset.airBrake(),
+                preset.collisionBrake(),
+                preset.wallBrake(),
+                preset.gravityWell(),
+                steps,
+                elapsed / 1_000_000_000d,
+                steps * 1_000_000_000d / Math.max(1L, elapsed),
+                engine.collisions(),
+                kineticEnergy(bodies),
+                gyration(bodies),
+                touching(bodies)
+            );
+        }
+    }
+
+    private static Engine.Settings single(Engine.Settings settings) {
+        return new Engine.Settings(
+            settings.solver(),
+            settings.theta(),
+            settings.broadPhase(),
+            1,
+            settings.integrator(),
+            settings.timestep(),
+            settings.accuracy(),
+            settings.sleepFrames(),
+            settings.contactSolver(),
+            settings.diagnostics()
+        );
+    }
+
+    /**
+     * @param value {@code min:max}, a single value, or null for the {@link #KNOB_RANGE}
+     */
+    private static Range range(String value) {
+        if (value == null) {
+            return KNOB_RANGE;
+        }
+        int colon = value.indexOf(':');
+        return colon < 0
+            ? new Range(Double.parseDouble(value), Double.parseDouble(value))
+            : new Range(Double.parseDouble(value.substring(0, colon)), Double.parseDouble(value.substring(colon + 1)));
+    }
+
+    /**
+     * @return Every combination of {@code levels} evenly spaced values per knob, with a fixed knob counted once
+     */
+    private static List<Preset> grid(List<Range> ranges, int levels) {
+        List<double[]> combinations = List.of(new double[0]);
+        for (Range range : ranges) {
+            int values = range.min() == range.max() ? 1 : levels;
+            List<double[]> extended = new ArrayList<>(combinations.size() * values);
+            for (double[] combination : combinations) {
+                for (int level = 0; level < values; level++) {
+                    double[] next = Arrays.copyOf(combination, combination.length + 1);
+                    next[combination.length] = values == 1 ? range.min() : range.scale(level, values - 1);
+                    extended.add(next);
+                }
+            }
+            combinations = extended;
+        }
+        return combinations.stream().map(Sweep::preset).toList();
+    }
+
+    private static List<Preset> random(List<Range> ranges, int samples, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Preset> presets = new ArrayList<>(samples);
+        for (int sample = 0; sample < samples; sample++) {
+            double[] values = new double[ranges.size()];
+            for (int knob = 0; knob < values.length; knob++) {
+                values[knob] = ranges.get(knob).scale(random.nextDouble());
+            }
+            presets.add(preset(values));
+        }
+        return presets;
+    }
+
+    private static Preset preset(double[] values) {
+        return new Preset(values[0], values[1], values[2], values[3], values[4]);
+    }
+
+    private static double kineticEnergy(Bodies bodies) {
+        double sum = 0d;
+        for (int i = 0; i < bodies.count; i++) {
+            sum += bodies.vx[i] * bodies.vx[i] + bodies.vy[i] * bodies.vy[i] + bodies.vz[i] * bodies.vz[i];
+        }
+        return sum / 2 / Math.max(1, bodies.count);
+    }
+
+    /**
+     * @return Root mean square distance from the mean position
+     */
+    private static double gyration(Bodies bodies) {
+        int count = Math.max(1, bodies.count);
+        double meanX = 0d;
+        double meanY = 0d;
+        double meanZ = 0d;
+        for (int i = 0; i < bodies.count; i++) {
+            meanX += bodies.x[i];
+            meanY += bodies.y[i];
+            meanZ += bodies.z[i];
+        }
+        meanX /= count;
+        meanY /= count;
+        meanZ /= count;
+        double sum = 0d;
+        for (int i = 0; i < bodies.count; i++) {
+            double dx = bodies.x[i] - meanX;
+            double dy = bodies.y[i] - meanY;
+            double dz = bodies.z[i] - meanZ;
+            sum += dx * dx + dy * dy + dz * dz;
+        }
+        return Math.sqrt(sum / count);
+    }
+
+    /**
+     * @return The fraction of bodies that touch at least one other
+     */
+    private static double touching(Bodies bodies) {
+        boolean[] touches = new boolean[bodies.count];
+        SpatialHash hash = new SpatialHash(2 * Engine.RE_RANGE.max(), bodies.count);
+        hash.build(bodies);
+        hash.forEachPair((i, j) -> {
+            double dx = bodies.x[j] - bodies.x[i];
+            double dy = bodies.y[j] - bodies.y[i];
+            double dz = bodies.z[j] - bodies.z[i];
+            double reach = bodies.radius[i] + bodies.radius[j];
+            if (dx * dx + dy * dy + dz * dz <= reach * reach) {
+                touches[i] = true;
+                touches[j] = true;
+            }
+        });
+        int touching = 0;
+        for (boolean touch : touches) {
+            if (touch) {
+                touching++;
+            }
+        }
+        return (double) touching / Math.max(1, bodies.count);
+    }
+
+    private enum Mode {
+
+        GRID,
+
+        RANDOM
+    }
+}
@@ -0,0 +1,278 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * A recorded trajectory, memory-mapped for replay. See {@link TrajectoryRecorder} for the writing side.
+ * <p>
+ * The file starts with a header holding the body count, the format parameters, the number of frames written, the
+ * {@link World} and the {@link Re} of each body. Frames follow in segments of {@link Layout#keyframes()} frames: a keyframe with every
+ * position quantized to an int, then delta frames with the change from the previous frame as a short. Every frame is
+ * prefixed with its step number. In ring mode the file holds a fixed number of segments, and the oldest segment is
+ * overwritten when a new one starts.
+ * <p>
+ * Decoding a frame takes its keyframe and the deltas up to it, so moving forwards within a segment applies a
+ * single delta, and any other move decodes at most one segment.
+ */
+final class Trajectory implements AutoCloseable {
+
+    private final Arena arena;
+
+    private final MemorySegment mapped;
+
+    private final Layout layout;
+
+    private final double quantum;
+
+    private final World world;
+
+    private final Re[] res;
+
+    private final long first;
+
+    private final long frames;
+
+    private final int[] qx;
+
+    private final int[] qy;
+
+    private final int[] qz;
+
+    private long decoded = -1;
+
+    private Trajectory(Arena arena, MemorySegment mapped) throws IOException {
+        this.arena = arena;
+        this.mapped = mapped;
+        int magic = mapped.get(INT, MAGIC_OFFSET);
+        if (magic != MAGIC) {
+            throw new IOException("Not a trajectory, magic " + Integer.toHexString(magic));
+        }
+        int version = mapped.get(INT, VERSION_OFFSET);
+        if (version != VERSION) {
+            throw new IOException("Unsupported trajectory version " + version);
+        }
+        this.layout = new Layout(
+            mapped.get(INT, COUNT_OFFSET),
+            mapped.get(INT, KEYFRAMES_OFFSET),
+            mapped.get(INT, RING_OFFSET)
+        );
+        this.quantum = mapped.get(DOUBLE, QUANTUM_OFFSET);
+        this.frames = mapped.get(LONG, FRAMES_OFFSET);
+        this.world = new World(
+            mapped.get(INT, WORLD_OFFSET),
+            mapped.get(INT, WORLD_OFFSET + 4),
+            mapped.get(INT, WORLD_OFFSET + 8)
+        );
+        if (frames == 0) {
+            throw new IOException("No frames recorded");
+        }
+        this.first = layout.first(frames);
+        int count = layout.count();
+        this.res = new Re[count];
+        for (int i = 0; i < count; i++) {
+            long offset = BODIES_OFFSET + (long) i * BODY_SIZE;
+            Re.Color color = new Re.Color(
+                mapped.get(DOUBLE, offset + 24),
+                mapped.get(DOUBLE, offset + 32),
+                mapped.get(DOUBLE, offset + 40),
+                mapped.get(DOUBLE, offset + 48)
+            );
+            res[i] = new Re(
+                mapped.get(DOUBLE, offset),
+                mapped.get(DOUBLE, offset + 8),
+                mapped.get(DOUBLE, offset + 16),
+                color,
+                color.brighten(.1d)
+            );
+        }
+        this.qx = new int[count];
+        this.qy = new int[count];
+        this.qz = new int[count];
+    }
+
+    /**
+     * @return The world the trajectory was recorded in
+     */
+    World world() {
+        return world;
+    }
+
+    Re[] res() {
+        return res;
+    }
+
+    /**
+     * @return The first frame still held, which is 0 unless a ring has wrapped around
+     */
+    long first() {
+        return first;
+    }
+
+    long last() {
+        return frames - 1;
+    }
+
+    /**
+     * Decodes a frame into a snapshot.
+     *
+     * @param frame    Frame, from {@link #first()} to {@link #last()}
+     * @param snapshot Target
+     */
+    void read(long frame, Snapshot snapshot) {
+        if (frame < first || frame >= frames) {
+            throw new IllegalArgumentException("Frame " + frame + " not in " + first + "-" + last());
+        }
+        int keyframes = layout.keyframes();
+        if (decoded < 0 || frame < decoded || frame / keyframes != decoded / keyframes) {
+            decodeKeyframe(frame - frame % keyframes);
+        }
+        while (decoded < frame) {
+            decodeDelta(decoded + 1);
+        }
+        int count = layout.count();
+        for (int i = 0; i < count; i++) {
+            snapshot.x[i] = qx[i] * quantum;
+            snapshot.y[i] = qy[i] * quantum;
+            snapshot.z[i] = qz[i] * quantum;
+        }
+        snapshot.step(mapped.get(LONG, layout.offset(frame)));
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + layout.count() + " bodies in " + world + ", frames " + first + "-" +
+               last() + "]";
+    }
+
+    private void decodeKeyframe(long frame) {
+        long offset = layout.offset(frame) + Long.BYTES;
+        for (int i = 0; i < layout.count(); i++) {
+            qx[i] = mapped.get(INT, offset);
+            qy[i] = mapped.get(INT, offset + 4);
+            qz[i] = mapped.get(INT, offset + 8);
+            offset += KEY_BODY_SIZE;
+        }
+        decoded = frame;
+    }
+
+    private void decodeDelta(long frame) {
+        long offset = layout.offset(frame) + Long.BYTES;
+        for (int i = 0; i < layout.count(); i++) {
+            qx[i] += mapped.get(SHORT, offset);
+            qy[i] += mapped.get(SHORT, offset + 2);
+            qz[i] += mapped.get(SHORT, offset + 4);
+            offset += DELTA_BODY_SIZE;
+        }
+        decoded = frame;
+    }
+
+    static Trajectory open(Path path) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Trajectory(arena, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena));
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw new IOException(path + ": Failed to open trajectory", e);
+        }
+    }
+
+    static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    static final int MAGIC = 0x47505452;
+
+    static final int VERSION = 2;
+
+    static final long MAGIC_OFFSET = 0L;
+
+    static final long VERSION_OFFSET = 4L;
+
+    static final long COUNT_OFFSET = 8L;
+
+    static final long KEYFRAMES_OFFSET = 12L;
+
+    static final long RING_OFFSET = 16L;
+
+    static final long QUANTUM_OFFSET = 24L;
+
+    static final long FRAMES_OFFSET = 32L;
+
+    /**
+     * World size x, y and z, as ints.
+     */
+    static final long WORLD_OFFSET = 40L;
+
+    static final long BODIES_OFFSET = 56L;
+
+    /**
+     * Weight, radius, density and colour rgba.
+     */
+    static final long BODY_SIZE = 7L * Double.BYTES;
+
+    static final long KEY_BODY_SIZE = 3L * Integer.BYTES;
+
+    static final long DELTA_BODY_SIZE = 3L * Short.BYTES;
+
+    /**
+     * Where the frames are in the file.
+     *
+     * @param count        Bodies
+     * @param keyframes    Frames per segment, one keyframe and the rest deltas
+     * @param ringSegments Segments in the ring, or 0 for no ring
+     */
+    record Layout(int count, int keyframes, int ringSegments) {
+
+        Layout {
+            if (count < 0 || keyframes < 1 || ringSegments < 0 || ringSegments == 1) {
+                throw new IllegalArgumentException(
+                    "Invalid layout: " + count + " bodies, " + keyframes + " keyframes, " + ringSegments + " segments"
+                );
+            }
+        }
+
+        long dataStart() {
+            return BODIES_OFFSET + count * BODY_SIZE;
+        }
+
+        long keyframeSize() {
+            return Long.BYTES + count * KEY_BODY_SIZE;
+        }
+
+        long deltaSize() {
+            return Long.BYTES + count * DELTA_BODY_SIZE;
+        }
+
+        long segmentSize() {
+            return keyframeSize() + (keyframes - 1) * deltaSize();
+        }
+
+        long offset(long frame) {
+            long segment = frame / keyframes;
+            long slot = ringSegments == 0 ? segment : segment % ringSegments;
+            int k = (int) (frame % keyframes);
+            return dataStart() + slot * segmentSize() + (k == 0 ? 0L : keyframeSize() + (k - 1) * deltaSize());
+        }
+
+        long end(long frame) {
+            return offset(frame) + (frame % keyframes == 0 ? keyframeSize() : deltaSize());
+        }
+
+        long first(long frames) {
+            if (ringSegments == 0 || frames == 0) {
+                return 0L;
+            }
+            long segment = (frames - 1) / keyframes;
+            return Math.max(0L, segment - ringSegments + 1) * keyframes;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * Appends the body positions of each step to a memory-mapped {@link Trajectory} file. Positions are quantized to
+ * {@link #QUANTUM} and delta-encoded against the positions as a reader will reconstruct them, so a delta that has to
+ * be clamped to a short leaves an error that the following frames catch up with, instead of one that accumulates.
+ * <p>
+ * Without a ring, the mapping doubles when it fills up, and the file is truncated to the frames written on
+ * {@link #close()}.
+ */
+final class TrajectoryRecorder implements AutoCloseable {
+
+    private final FileChannel channel;
+
+    private final Trajectory.Layout layout;
+
+    private final int[] qx;
+
+    private final int[] qy;
+
+    private final int[] qz;
+
+    private Arena arena;
+
+    private MemorySegment mapped;
+
+    private long frames;
+
+    /**
+     * @param path       File to record to, created or truncated
+     * @param world      World the bodies move in
+     * @param res        Bodies
+     * @param keyframes  Frames per segment, one keyframe and the rest deltas
+     * @param ringFrames Frames to keep at least, or 0 to keep them all
+     * @throws IOException If the file could not be opened
+     */
+    TrajectoryRecorder(Path path, World world, Re[] res, int keyframes, int ringFrames) throws IOException {
+        int ringSegments = ringFrames == 0 ? 0 : Math.max(2, Math.ceilDiv(ringFrames, keyframes));
+        this.layout = new Trajectory.Layout(res.length, keyframes, ringSegments);
+        this.channel = FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        );
+        this.qx = new int[res.length];
+        this.qy = new int[res.length];
+        this.qz = new int[res.length];
+        map(layout.dataStart() + (ringSegments == 0 ? INITIAL_SEGMENTS : ringSegments) * layout.segmentSize());
+        writeHeader(world, res);
+    }
+
+    /**
+     * @param bodies Bodies, as of the end of a step
+     * @param step   The step
+     */
+    void record(Bodies bodies, long step) {
+        long end = layout.end(frames);
+        if (end > mapped.byteSize()) {
+            map(Math.max(end, 2 * mapped.byteSize()));
+        }
+        long offset = layout.offset(frames);
+        mapped.set(Trajectory.LONG, offset, step);
+        offset += Long.BYTES;
+        if (frames % layout.keyframes() == 0) {
+            for (int i = 0; i < bodies.count; i++) {
+                qx[i] = quantize(bodies.x[i]);
+                qy[i] = quantize(bodies.y[i]);
+                qz[i] = quantize(bodies.z[i]);
+                mapped.set(Trajectory.INT, offset, qx[i]);
+                mapped.set(Trajectory.INT, offset + 4, qy[i]);
+                mapped.set(Trajectory.INT, offset + 8, qz[i]);
+                offset += Trajectory.KEY_BODY_SIZE;
+            }
+        } else {
+            for (int i = 0; i < bodies.count; i++) {
+                short dx = delta(qx[i], bodies.x[i]);
+                short dy = delta(qy[i], bodies.y[i]);
+                short dz = delta(qz[i], bodies.z[i]);
+                qx[i] += dx;
+                qy[i] += dy;
+                qz[i] += dz;
+                mapped.set(Trajectory.SHORT, offset, dx);
+                mapped.set(Trajectory.SHORT, offset + 2, dy);
+                mapped.set(Trajectory.SHORT, offset + 4, dz);
+                offset += Trajectory.DELTA_BODY_SIZE;
+            }
+        }
+        frames++;
+        mapped.set(Trajectory.LONG, Trajectory.FRAMES_OFFSET, frames);
+    }
+
+    long frames() {
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped.force();
+        arena.close();
+        if (layout.ringSegments() == 0) {
+            channel.truncate(frames == 0 ? layout.dataStart() : layout.end(frames - 1));
+        }
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + layout + ", " + frames + " frames]";
+    }
+
+    private void map(long size) {
+        if (arena != null) {
+            arena.close();
+        }
+        arena = Arena.ofShared();
+        try {
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map " + size + " bytes", e);
+        }
+    }
+
+    private void writeHeader(World world, Re[] res) {
+        mapped.set(Trajectory.INT, Trajectory.MAGIC_OFFSET, Trajectory.MAGIC);
+        mapped.set(Trajectory.INT, Trajectory.VERSION_OFFSET, Trajectory.VERSION);
+        mapped.set(Trajectory.INT, Trajectory.COUNT_OFFSET, layout.count());
+        mapped.set(Trajectory.INT, Trajectory.KEYFRAMES_OFFSET, layout.keyframes());
+        mapped.set(Trajectory.INT, Trajectory.RING_OFFSET, layout.ringSegments());
+        mapped.set(Trajectory.DOUBLE, Trajectory.QUANTUM_OFFSET, QUANTUM);
+        mapped.set(Trajectory.LONG, Trajectory.FRAMES_OFFSET, 0L);
+        mapped.set(Trajectory.INT, Trajectory.WORLD_OFFSET, world.sizeX());
+        mapped.set(Trajectory.INT, Trajectory.WORLD_OFFSET + 4, world.sizeY());
+        mapped.set(Trajectory.INT, Trajectory.WORLD_OFFSET + 8, world.sizeZ());
+        for (int i = 0; i < res.length; i++) {
+            long offset = Trajectory.BODIES_OFFSET + i * Trajectory.BODY_SIZE;
+            Re re = res[i];
+            mapped.set(Trajectory.DOUBLE, offset, re.weight());
+            mapped.set(Trajectory.DOUBLE, offset + 8, re.radius());
+            mapped.set(Trajectory.DOUBLE, offset + 16, re.density());
+            mapped.set(Trajectory.DOUBLE, offset + 24, re.color().r());
+            mapped.set(Trajectory.DOUBLE, offset + 32, re.color().g());
+            mapped.set(Trajectory.DOUBLE, offset + 40, re.color().b());
+            mapped.set(Trajectory.DOUBLE, offset + 48, re.color().opacity());
+        }
+    }
+
+    static final int DEFAULT_KEYFRAMES = 32;
+
+    /**
+     * World units per quantization step. Deltas reach ±128 units per step, coordinates ±8M units.
+     */
+    static final double QUANTUM = 1d / 256;
+
+    private static final int INITIAL_SEGMENTS = 16;
+
+    /**
+     * @param options Options
+     * @param world   World the bodies move in
+     * @param res     Bodies to record
+     * @return A recorder if {@code --record} was given, otherwise null
+     */
+    static TrajectoryRecorder from(Options options, World world, Re[] res) {
+        if (!options.has("record")) {
+            return null;
+        }
+        Path path = Path.of(options.string("record", null));
+        try {
+            return new TrajectoryRecorder(
+                path,
+                world,
+                res,
+                options.integer("record.keyframes", DEFAULT_KEYFRAMES),
+                options.integer("record.ring", 0)
+            );
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to record to " + path, e);
+        }
+    }
+
+    private static int quantize(double coordinate) {
+        return Math.clamp(Math.round(coordinate / QUANTUM), Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    private static short delta(int previous, double coordinate) {
+        return (short) Math.clamp((long) quantize(coordinate) - previous, Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+/**
+ * A tessellated sphere of radius 1, as a vertex array and triangles of vertex indices. The poles are single
+ * vertices, and every triangle is wound counter-clockwise as seen from the outside.
+ *
+ * @param points    x, y, z per vertex
+ * @param triangles Three vertex indices per triangle
+ */
+record UnitSphere(float[] points, int[] triangles) {
+
+    int vertexCount() {
+        return points.length / 3;
+    }
+
+    int triangleCount() {
+        return triangles.length / 3;
+    }
+
+    /**
+     * @param divisions Vertices around the equator, as for {@code javafx.scene.shape.Sphere}
+     * @return Sphere with {@code divisions / 2} bands from pole to pole
+     */
+    static UnitSphere of(int divisions) {
+        if (divisions < 4) {
+            throw new IllegalArgumentException("Too few divisions: " + divisions);
+        }
+        int segments = divisions;
+        int rings = Math.max(2, divisions / 2);
+        int ringVertices = (rings - 1) * segments;
+        float[] points = new float[(ringVertices + 2) * 3];
+
+        int south = ringVertices + 1;
+        put(points, 0, 0d, -1d, 0d);
+        put(points, south, 0d, 1d, 0d);
+        for (int r = 1; r < rings; r++) {
+            double latitude = Math.PI * r / rings - Math.PI / 2;
+            double y = Math.sin(latitude);
+            double radius = Math.cos(latitude);
+            for (int s = 0; s < segments; s++) {
+                double longitude = 2 * Math.PI * s / segments;
+                put(points, ring(r, s, segments), radius * Math.cos(longitude), y, radius * Math.sin(longitude));
+            }
+        }
+
+        int[] triangles = new int[segments * 2 * (rings - 1) * 3];
+        int t = 0;
+        for (int s = 0; s < segments; s++) {
+            int next = (s + 1) % segments;
+            t = triangle(points, triangles, t, 0, ring(1, s, segments), ring(1, next, segments));
+            t = triangle(points, triangles, t, south, ring(rings - 1, next, segments), ring(rings - 1, s, segments));
+            for (int r = 1; r < rings - 1; r++) {
+                int a = ring(r, s, segments);
+                int b = ring(r, next, segments);
+                int c = ring(r + 1, s, segments);
+                int d = ring(r + 1, next, segments);
+                t = triangle(points, triangles, t, a, c, b);
+                t = triangle(points, triangles, t, b, c, d);
+            }
+        }
+        return new UnitSphere(points, triangles);
+    }
+
+    private static int ring(int r, int s, int segments) {
+        return 1 + (r - 1) * segments + s;
+    }
+
+    private static void put(float[] points, int vertex, double x, double y, double z) {
+        points[vertex * 3] = (float) x;
+        points[vertex * 3 + 1] = (float) y;
+        points[vertex * 3 + 2] = (float) z;
+    }
+
+    /**
+     * Adds a triangle, swapping two corners if needed so that its normal points away from the centre.
+     */
+    private static int triangle(float[] points, int[] triangles, int t, int a, int b, int c) {
+        double ux = points[b * 3] - points[a * 3];
+        double uy = points[b * 3 + 1] - points[a * 3 + 1];
+        double uz = points[b * 3 + 2] - points[a * 3 + 2];
+        double vx = points[c * 3] - points[a * 3];
+        double vy = points[c * 3 + 1] - points[a * 3 + 1];
+        double vz = points[c * 3 + 2] - points[a * 3 + 2];
+        double nx = uy * vz - uz * vy;
+        double ny = uz * vx - ux * vz;
+        double nz = ux * vy - uy * vx;
+        double outward = nx * (points[a * 3] + points[b * 3] + points[c * 3]) +
+                         ny * (points[a * 3 + 1] + points[b * 3 + 1] + points[c * 3 + 1]) +
+                         nz * (points[a * 3 + 2] + points[b * 3 + 2] + points[c * 3 + 2]);
+        triangles[t] = a;
+        triangles[t + 1] = outward < 0 ? c : b;
+        triangles[t + 2] = outward < 0 ? b : c;
+        return t + 3;
+    }
+}
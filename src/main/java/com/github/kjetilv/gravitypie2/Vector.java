@@ -1,7 +1,5 @@
 package com.github.kjetilv.gravitypie2;
 
-import module java.base;
-
 import static java.lang.Math.pow;
 import static java.lang.Math.sqrt;
 
@@ -11,18 +9,6 @@ record Vector(double x, double y, double z) {
         this(0d, 0d, 0d);
     }
 
-    Vector(Range range) {
-        this(range, range, range);
-    }
-
-    Vector(Range rangeX, Range rangeY, Range rangeZ) {
-        this(
-            RND.nextDouble(rangeX.min(), rangeX.max()),
-            RND.nextDouble(rangeY.min(), rangeY.max()),
-            RND.nextDouble(rangeZ.min(), rangeZ.max())
-        );
-    }
-
     double length() {
         return sqrt(x * x + y * y + z * z);
     }
@@ -64,6 +50,4 @@ record Vector(double x, double y, double z) {
             pow(z - v.z, 2)
         );
     }
-
-    private static final Random RND = new Random();
 }
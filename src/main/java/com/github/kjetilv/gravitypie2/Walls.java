@@ -0,0 +1,58 @@
+package com.github.kjetilv.gravitypie2;
+
+/**
+ * The walls of the world, as the engines see them: bodies bounce off them, and the gravity well pulls towards the
+ * floor. One axis at a time, so that engines can keep their bodies however they like.
+ * <p>
+ * A body bounces when it reaches into a wall at {@code ±bound}. It is put back a unit clear of the wall, with its
+ * velocity on that axis turned away from it. The caller applies the wall brake, once per body however many walls it
+ * hit.
+ */
+final class Walls {
+
+    private Walls() {
+    }
+
+    /**
+     * @param p      Position on the axis
+     * @param r      Radius
+     * @param bound  Half the world's size on the axis
+     * @return Whether the body reaches into either wall on the axis
+     */
+    static boolean outside(double p, double r, double bound) {
+        return p < -bound + r || p > bound - r;
+    }
+
+    /**
+     * @return The position after a bounce on the axis, or p if there was none
+     */
+    static double position(double p, double r, double bound) {
+        return p < -bound + r ? -bound + r + 1
+            : p > bound - r ? bound - r - 1
+                : p;
+    }
+
+    /**
+     * @return The velocity on the axis after a bounce, or v if there was none
+     */
+    static double velocity(double p, double v, double r, double bound) {
+        return p < -bound + r ? Math.abs(v)
+            : p > bound - r ? -Math.abs(v)
+                : v;
+    }
+
+    /**
+     * The gravity well pulls a body towards the floor in proportion to its height above it: the vertical acceleration
+     * is the ground pull times {@code y + yBound}, and the potential energy minus half the ground pull times its
+     * square.
+     *
+     * @param gravityWell The gravity well knob
+     * @param weight      Weight of the body
+     * @return Ground pull
+     */
+    static double groundPull(double gravityWell, double weight) {
+        return gravityWell * (weight / GRAVITY_WELL_SCALE);
+    }
+
+    private static final int GRAVITY_WELL_SCALE = 10_000;
+}
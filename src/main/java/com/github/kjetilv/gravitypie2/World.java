@@ -0,0 +1,36 @@
+package com.github.kjetilv.gravitypie2;
+
+/**
+ * The box the bodies live in, centered on origo.
+ *
+ * @param sizeX Width
+ * @param sizeY Height
+ * @param sizeZ Depth
+ */
+record World(int sizeX, int sizeY, int sizeZ) {
+
+    World {
+        if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0) {
+            throw new IllegalArgumentException("Invalid world: " + sizeX + "x" + sizeY + "x" + sizeZ);
+        }
+    }
+
+    int xBound() {
+        return sizeX / 2;
+    }
+
+    int yBound() {
+        return sizeY / 2;
+    }
+
+    int zBound() {
+        return sizeZ / 2;
+    }
+
+    /**
+     * @return The range bodies are initially scattered over, on each axis
+     */
+    Range spawnRange() {
+        return new Range(-sizeZ * 0.4, sizeZ * 0.4);
+    }
+}
@@ -2,6 +2,9 @@ module gravitypie {
     requires javafx.controls;
     requires javafx.graphics;
     requires java.desktop;
+    requires jdk.jfr;
+    requires jdk.management;
+    requires static jdk.incubator.vector;
 
     opens com.github.kjetilv.gravitypie2 to javafx.graphics;
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Launches worker processes on this machine, with the java and class path of the test.
+ */
+class ClusterTest {
+
+    @Test
+    void oneWorkerMatchesTheEngine() throws Exception {
+        Cluster.Result result = Cluster.run(options(1));
+        assertTrue(result.complete(), "Bodies were lost or duplicated");
+        assertEquals(0d, result.first().pullMax(), "pull error, first step");
+        assertEquals(0d, result.first().driftMax(), "drift, first step");
+        assertEquals(0d, result.last().pullMax(), "pull error, last step");
+        assertEquals(0d, result.last().driftMax(), "drift, last step");
+    }
+
+    @Test
+    void fourWorkersAgreeWithTheEngine() throws Exception {
+        Cluster.Result result = Cluster.run(options(4));
+        assertTrue(result.complete(), "Bodies were lost or duplicated");
+        assertTrue(
+            result.first().pullMean() <= result.tolerance(),
+            () -> "Mean pull error " + result.first().pullMean() + " exceeds " + result.tolerance()
+        );
+        assertTrue(result.passed());
+    }
+
+    @Test
+    void rejectsEngineOptions() {
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> Cluster.run(Options.parse("--workers", "2", "--integrator", "leapfrog"))
+        );
+    }
+
+    private static Options options(int workers) {
+        return Options.parse(
+            "--workers", String.valueOf(workers),
+            "--count", "600",
+            "--steps", "10",
+            "--seed", "42",
+            "--compare"
+        );
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The same seed must give the same bodies, bit for bit, on any number of threads. Enough bodies that
+ * {@link Parallel} actually splits the loops, in a world small enough that they collide.
+ */
+class DeterminismTest {
+
+    @Test
+    void scatterIsTheSameOnAnyThreadCount() {
+        try (Engine serial = engine(1, Engine.Integrator.EULER, Engine.ContactSolver.SERIAL);
+             Engine parallel = engine(THREADS, Engine.Integrator.EULER, Engine.ContactSolver.SERIAL)
+        ) {
+            serial.scatter(SEED);
+            parallel.scatter(SEED);
+            assertSame(serial.bodies(), parallel.bodies());
+        }
+    }
+
+    @Test
+    void parallelSteppingIsTheSameOnAnyThreadCount() {
+        assertSameOnAnyThreadCount(Engine.Integrator.EULER, Engine.ContactSolver.SERIAL);
+    }
+
+    @Test
+    void parallelLeapfrogIsTheSameOnAnyThreadCount() {
+        assertSameOnAnyThreadCount(Engine.Integrator.LEAPFROG, Engine.ContactSolver.SERIAL);
+    }
+
+    @Test
+    void blockTimestepsAreTheSameOnAnyThreadCount() {
+        assertSameOnAnyThreadCount(Engine.Integrator.BLOCK, Engine.ContactSolver.SERIAL);
+    }
+
+    @Test
+    void colouredContactsAreTheSameOnAnyThreadCount() {
+        assertSameOnAnyThreadCount(Engine.Integrator.EULER, Engine.ContactSolver.COLOURED);
+    }
+
+    private static void assertSameOnAnyThreadCount(Engine.Integrator integrator, Engine.ContactSolver contacts) {
+        try (Engine serial = engine(1, integrator, contacts);
+             Engine parallel = engine(THREADS, integrator, contacts)
+        ) {
+            for (Engine engine : List.of(serial, parallel)) {
+                engine.scatter(SEED);
+                for (int step = 0; step < STEPS; step++) {
+                    engine.step();
+                }
+            }
+            assertTrue(serial.collisions() > 0, "No collisions to resolve");
+            assertEquals(serial.collisions(), parallel.collisions(), "collisions");
+            assertEquals(serial.wallHits(), parallel.wallHits(), "wall hits");
+            assertSame(serial.bodies(), parallel.bodies());
+        }
+    }
+
+    private static void assertSame(Bodies expected, Bodies actual) {
+        assertArrayEquals(expected.x, actual.x, "x");
+        assertArrayEquals(expected.y, actual.y, "y");
+        assertArrayEquals(expected.z, actual.z, "z");
+        assertArrayEquals(expected.vx, actual.vx, "vx");
+        assertArrayEquals(expected.vy, actual.vy, "vy");
+        assertArrayEquals(expected.vz, actual.vz, "vz");
+        assertArrayEquals(expected.ax, actual.ax, "ax");
+        assertArrayEquals(expected.ay, actual.ay, "ay");
+        assertArrayEquals(expected.az, actual.az, "az");
+    }
+
+    private static Engine engine(int threads, Engine.Integrator integrator, Engine.ContactSolver contacts) {
+        Engine.Settings settings = new Engine.Settings(
+            Gravity.Solver.DIRECT,
+            0.5d,
+            true,
+            threads,
+            integrator,
+            1d,
+            1d,
+            0,
+            contacts,
+            0
+        );
+        return new Engine(new World(800, 800, 800), Engine.res(COUNT), settings);
+    }
+
+    private static final int THREADS = 4;
+
+    private static final int COUNT = 2_000;
+
+    private static final int STEPS = 20;
+
+    private static final long SEED = 42L;
+}
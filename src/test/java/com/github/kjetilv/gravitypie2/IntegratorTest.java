@@ -0,0 +1,146 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntegratorTest {
+
+    @Test
+    void leapfrogKeepsTheEnergyOfAnOrbit() {
+        double drift = energyDrift(Engine.Integrator.LEAPFROG);
+        assertTrue(drift < 1e-5, () -> "Leapfrog drifted " + drift);
+    }
+
+    @Test
+    void leapfrogDriftsLessThanEuler() {
+        double leapfrog = energyDrift(Engine.Integrator.LEAPFROG);
+        double euler = energyDrift(Engine.Integrator.EULER);
+        assertTrue(leapfrog * 100 < euler, () -> "Leapfrog drifted " + leapfrog + ", Euler " + euler);
+    }
+
+    @Test
+    void blockTimestepsPullTheSlowBodiesLessOften() {
+        Run leapfrog = mixed(Engine.Integrator.LEAPFROG);
+        Run block = mixed(Engine.Integrator.BLOCK);
+        assertTrue(
+            block.forceEvaluations() * 3 < leapfrog.forceEvaluations() * 2,
+            () -> "Block evaluated " + block.forceEvaluations() + " pulls, leapfrog " + leapfrog.forceEvaluations()
+        );
+        assertTrue(block.drift() < 1e-5, () -> "Block drifted " + block.drift());
+    }
+
+    /**
+     * @return The largest relative deviation in total energy over a few orbits of two bodies, with no brakes and
+     *     nothing to hit
+     */
+    private static double energyDrift(Engine.Integrator integrator) {
+        Engine.Settings settings = new Engine.Settings(
+            Gravity.Solver.DIRECT,
+            0.5d,
+            true,
+            1,
+            integrator,
+            1d,
+            1d,
+            0,
+            Engine.ContactSolver.SERIAL,
+            STEPS
+        );
+        try (Engine engine = new Engine(new World(1920, 1080, 1920), Engine.res(2), settings)) {
+            engine.apply(new Preset(.1d, 0d, 0d, 0d, 0d));
+            Bodies bodies = engine.bodies();
+            bodies.position(0, new Vector(-SEPARATION / 2, 0d, 0d));
+            bodies.position(1, new Vector(SEPARATION / 2, 0d, 0d));
+            bodies.vz[0] = -SPEED;
+            bodies.vz[1] = SPEED;
+            engine.positionsChanged();
+            for (int step = 0; step < STEPS; step++) {
+                engine.step();
+            }
+            assertEquals(0L, engine.collisions(), "collisions");
+            assertEquals(0L, engine.wallHits(), "wall hits");
+
+            return drift(engine);
+        }
+    }
+
+    /**
+     * A fast pair orbiting a body at the centre, which they pull equally from both sides, and four bodies far out
+     * that fall in only slowly. With block timesteps, only the pair needs the finer rungs.
+     */
+    private static Run mixed(Engine.Integrator integrator) {
+        Engine.Settings settings = new Engine.Settings(
+            Gravity.Solver.DIRECT,
+            0.5d,
+            true,
+            1,
+            integrator,
+            MIXED_TIMESTEP,
+            1d,
+            0,
+            Engine.ContactSolver.SERIAL,
+            MIXED_STEPS
+        );
+        try (Engine engine = new Engine(new World(8000, 8000, 8000), Engine.res(7), settings)) {
+            engine.apply(new Preset(1.6d, 0d, 0d, 0d, 0d));
+            Bodies bodies = engine.bodies();
+            bodies.position(0, new Vector(-NEAR, 0d, 0d));
+            bodies.position(1, new Vector(NEAR, 0d, 0d));
+            bodies.vz[0] = -FAST;
+            bodies.vz[1] = FAST;
+            bodies.position(2, new Vector(0d, FAR, 0d));
+            bodies.position(3, new Vector(0d, -FAR, 0d));
+            bodies.position(4, new Vector(0d, 0d, FAR));
+            bodies.position(5, new Vector(0d, 0d, -FAR));
+            bodies.position(6, new Vector(0d, 0d, 0d));
+            engine.positionsChanged();
+            for (int step = 0; step < MIXED_STEPS; step++) {
+                engine.step();
+            }
+            assertEquals(0L, engine.collisions(), "collisions");
+            assertEquals(0L, engine.wallHits(), "wall hits");
+            return new Run(engine.forceEvaluations(), drift(engine));
+        }
+    }
+
+    /**
+     * @return The largest relative deviation in total energy over the diagnostics kept
+     */
+    private static double drift(Engine engine) {
+        List<Diagnostics.Sample> series = engine.diagnostics().series();
+        Diagnostics.Sample first = series.getFirst();
+        return series.stream()
+            .mapToDouble(sample -> Math.abs(sample.energy() - first.energy()) / Math.abs(first.energy()))
+            .max()
+            .orElseThrow();
+    }
+
+    private static final int STEPS = 3_000;
+
+    private static final double SEPARATION = 400d;
+
+    /**
+     * Below the circular speed of 0.71, for an eccentric orbit.
+     */
+    private static final double SPEED = .5d;
+
+    private static final int MIXED_STEPS = 20;
+
+    private static final double MIXED_TIMESTEP = 4d;
+
+    /**
+     * Near the circular speed around the centre body, and fast enough for the pair to need finer rungs.
+     */
+    private static final double FAST = 4.9d;
+
+    private static final double NEAR = 100d;
+
+    private static final double FAR = 3_000d;
+
+    private record Run(long forceEvaluations, double drift) {
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OctreeTest {
+
+    @Test
+    void openingEveryNodeIsTheDirectSum() {
+        double[] errors = errors(0d);
+        double max = Arrays.stream(errors).max().orElseThrow();
+        assertTrue(max < 1e-12, () -> "Largest relative error " + max);
+    }
+
+    @Test
+    void defaultOpeningAngleStaysClose() {
+        double[] errors = errors(DEFAULT_THETA);
+        double mean = Arrays.stream(errors).average().orElseThrow();
+        double max = Arrays.stream(errors).max().orElseThrow();
+        assertTrue(mean < 0.02d, () -> "Mean relative error " + mean);
+        assertTrue(max < 0.05d, () -> "Largest relative error " + max);
+    }
+
+    /**
+     * @return |a - a'| / |a| for each body of a scatter, with a' from the octree and a from the direct sum
+     */
+    private static double[] errors(double theta) {
+        Engine.Settings settings = new Engine.Settings(Gravity.Solver.DIRECT, DEFAULT_THETA, true, 1);
+        try (Engine engine = new Engine(WORLD, Engine.res(COUNT), settings)) {
+            engine.scatter(SEED);
+            Bodies bodies = engine.bodies();
+
+            Gravity direct = new DirectGravity();
+            direct.prepare(bodies);
+            double[] ax = new double[COUNT];
+            double[] ay = new double[COUNT];
+            double[] az = new double[COUNT];
+            for (int i = 0; i < COUNT; i++) {
+                direct.pull(bodies, i, 1d);
+                ax[i] = bodies.ax[i];
+                ay[i] = bodies.ay[i];
+                az[i] = bodies.az[i];
+            }
+
+            Gravity octree = new Octree(theta);
+            octree.prepare(bodies);
+            double[] errors = new double[COUNT];
+            for (int i = 0; i < COUNT; i++) {
+                octree.pull(bodies, i, 1d);
+                double ex = bodies.ax[i] - ax[i];
+                double ey = bodies.ay[i] - ay[i];
+                double ez = bodies.az[i] - az[i];
+                double length = Math.sqrt(ax[i] * ax[i] + ay[i] * ay[i] + az[i] * az[i]);
+                errors[i] = Math.sqrt(ex * ex + ey * ey + ez * ez) / length;
+            }
+            return errors;
+        }
+    }
+
+    private static final World WORLD = new World(1920, 1080, 1920);
+
+    private static final int COUNT = 2_000;
+
+    private static final double DEFAULT_THETA = 0.5d;
+
+    private static final long SEED = 1L;
+}
@@ -0,0 +1,113 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two bodies at rest with no gravity, and a third on its way to hit the first.
+ */
+class SleepTest {
+
+    @Test
+    void restingBodiesSleepAfterTheQuietWindow() {
+        try (Engine engine = engine()) {
+            for (int step = 1; step < SLEEP_FRAMES; step++) {
+                engine.step();
+                assertEquals(0L, engine.sleeping(), "sleeping after step " + step);
+            }
+            engine.step();
+            Bodies bodies = engine.bodies();
+            assertTrue(bodies.asleep[RESTING], "resting body asleep");
+            assertTrue(bodies.asleep[BYSTANDER], "bystander asleep");
+            assertFalse(bodies.asleep[MOVING], "moving body asleep");
+            assertEquals(2L, engine.sleeping(), "sleeping");
+        }
+    }
+
+    @Test
+    void aHitWakesTheSleeper() {
+        try (Engine engine = engine()) {
+            Bodies bodies = engine.bodies();
+            while (!bodies.asleep[RESTING]) {
+                engine.step();
+            }
+            for (int step = 0; bodies.asleep[RESTING]; step++) {
+                assertTrue(step < MAX_STEPS, "The resting body was never hit");
+                long evaluations = engine.forceEvaluations();
+                engine.step();
+                if (!bodies.asleep[RESTING]) {
+                    assertEquals(2L, engine.forceEvaluations() - evaluations, "pulls in the step it woke");
+                }
+            }
+            assertTrue(bodies.asleep[BYSTANDER], "bystander asleep");
+            assertEquals(1L, engine.sleeping(), "sleeping");
+            for (int step = 0; engine.collisions() == 0L; step++) {
+                assertTrue(step < MAX_STEPS, "The resting body was woken, but never hit");
+                engine.step();
+            }
+            assertTrue(bodies.vx[RESTING] > 0d, "resting body pushed");
+        }
+    }
+
+    @Test
+    void aKnobChangeWakesEveryone() {
+        try (Engine engine = engine()) {
+            for (int step = 0; step < SLEEP_FRAMES; step++) {
+                engine.step();
+            }
+            assertEquals(2L, engine.sleeping(), "sleeping");
+            engine.apply(new Preset(0d, AIR_BRAKE, 0d, 0d, 0d));
+            engine.step();
+            Bodies bodies = engine.bodies();
+            assertFalse(bodies.asleep[RESTING], "resting body asleep");
+            assertFalse(bodies.asleep[BYSTANDER], "bystander asleep");
+            assertEquals(0L, engine.sleeping(), "sleeping");
+        }
+    }
+
+    private static Engine engine() {
+        Engine.Settings settings = new Engine.Settings(
+            Gravity.Solver.DIRECT,
+            0.5d,
+            true,
+            1,
+            Engine.Integrator.EULER,
+            1d,
+            1d,
+            SLEEP_FRAMES,
+            Engine.ContactSolver.SERIAL,
+            0
+        );
+        Engine engine = new Engine(new World(2000, 2000, 2000), Engine.res(3), settings);
+        engine.apply(new Preset(0d, 0d, 0d, 0d, 0d));
+        Bodies bodies = engine.bodies();
+        bodies.position(RESTING, new Vector(0d, 0d, 0d));
+        bodies.position(BYSTANDER, new Vector(0d, 500d, 0d));
+        bodies.position(MOVING, new Vector(-300d, 0d, 0d));
+        bodies.vx[MOVING] = SPEED;
+        engine.positionsChanged();
+        return engine;
+    }
+
+    private static final int RESTING = 0;
+
+    private static final int BYSTANDER = 1;
+
+    private static final int MOVING = 2;
+
+    private static final int SLEEP_FRAMES = 5;
+
+    /**
+     * Slow enough to arrive well after the others have fallen asleep.
+     */
+    private static final double SPEED = 10d;
+
+    private static final double AIR_BRAKE = .01d;
+
+    private static final int MAX_STEPS = 100;
+}
@@ -0,0 +1,102 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpatialHashTest {
+
+    @Test
+    void findsEveryTouchingPairOnce() {
+        Bodies bodies = new Bodies(Engine.res(COUNT));
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < COUNT; i++) {
+            bodies.position(
+                i,
+                new Vector(
+                    random.nextDouble(-SPREAD, SPREAD),
+                    random.nextDouble(-SPREAD, SPREAD),
+                    random.nextDouble(-SPREAD, SPREAD)
+                )
+            );
+        }
+        straddle(bodies, COUNT - 1, COUNT - 2, new Vector(1d, 0d, 0d), 0d);
+        straddle(bodies, COUNT - 3, COUNT - 4, new Vector(0d, -1d, 0d), -3 * CELL);
+        straddle(bodies, COUNT - 5, COUNT - 6, new Vector(1d, 1d, 1d), 2 * CELL);
+        straddle(bodies, COUNT - 7, COUNT - 8, new Vector(-1d, 1d, -1d), -CELL);
+
+        Set<Long> touching = new HashSet<>();
+        for (int i = 0; i < COUNT; i++) {
+            for (int j = i + 1; j < COUNT; j++) {
+                if (touch(bodies, i, j)) {
+                    touching.add(pair(i, j));
+                }
+            }
+        }
+        for (int i = COUNT - 8; i < COUNT; i += 2) {
+            assertTrue(touching.contains(pair(i, i + 1)), "Border pair " + i + " does not touch");
+        }
+
+        SpatialHash hash = new SpatialHash(CELL, COUNT);
+        hash.build(bodies);
+        Map<Long, Integer> reported = new HashMap<>();
+        hash.forEachPair((i, j) -> {
+            assertTrue(i < j, () -> "Pair out of order: " + i + ", " + j);
+            reported.merge(pair(i, j), 1, Integer::sum);
+        });
+        reported.forEach((pair, times) -> assertEquals(1L, (long) times, "Reports of " + pair));
+        Set<Long> missed = new HashSet<>(touching);
+        missed.removeAll(reported.keySet());
+        assertTrue(missed.isEmpty(), () -> "Missed " + missed.size() + " of " + touching.size() + " touching pairs");
+        assertTrue(touching.size() > COUNT / 10, () -> "Only " + touching.size() + " touching pairs");
+    }
+
+    /**
+     * Places two bodies across the corner of a cell at {@code border} on each axis, as far apart as they can be and
+     * still touch.
+     *
+     * @param direction From a to b, with each component ±1 or 0
+     */
+    private static void straddle(Bodies bodies, int a, int b, Vector direction, double border) {
+        double reach = (bodies.radius[a] + bodies.radius[b]) * (1 - 1e-9);
+        double length = direction.length();
+        double ax = border - Math.signum(direction.x()) * 1e-6;
+        double ay = border - Math.signum(direction.y()) * 1e-6;
+        double az = border - Math.signum(direction.z()) * 1e-6;
+        bodies.position(a, new Vector(ax, ay, az));
+        bodies.position(
+            b,
+            new Vector(
+                ax + direction.x() / length * reach,
+                ay + direction.y() / length * reach,
+                az + direction.z() / length * reach
+            )
+        );
+    }
+
+    private static boolean touch(Bodies bodies, int i, int j) {
+        double dx = bodies.x[j] - bodies.x[i];
+        double dy = bodies.y[j] - bodies.y[i];
+        double dz = bodies.z[j] - bodies.z[i];
+        double reach = bodies.radius[i] + bodies.radius[j];
+        return dx * dx + dy * dy + dz * dz <= reach * reach;
+    }
+
+    private static long pair(int i, int j) {
+        return (long) i << 32 | j;
+    }
+
+    /**
+     * The largest bodies are the last, so the border pairs are of the largest radius.
+     */
+    private static final int COUNT = 3_000;
+
+    private static final double CELL = 2 * Engine.RE_RANGE.max();
+
+    private static final double SPREAD = 600d;
+
+    private static final long SEED = 1L;
+}
@@ -0,0 +1,118 @@
+package com.github.kjetilv.gravitypie2;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrajectoryTest {
+
+    @Test
+    void replaysTheRecordedPositions() throws IOException {
+        Path path = Files.createTempFile("trajectory", ".gpt");
+        try {
+            List<double[][]> recorded = record(path, 0);
+            try (Trajectory trajectory = Trajectory.open(path)) {
+                assertEquals(WORLD, trajectory.world(), "world");
+                assertEquals((long) COUNT, (long) trajectory.res().length, "bodies");
+                assertEquals(0L, trajectory.first(), "first frame");
+                assertEquals(FRAMES - 1L, trajectory.last(), "last frame");
+                assertFrames(trajectory, recorded, 0);
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void replaysTheLastSegmentsOfARing() throws IOException {
+        Path path = Files.createTempFile("trajectory", ".gpt");
+        try {
+            List<double[][]> recorded = record(path, RING_FRAMES);
+            try (Trajectory trajectory = Trajectory.open(path)) {
+                long segments = RING_FRAMES / KEYFRAMES;
+                long lastSegment = (FRAMES - 1) / KEYFRAMES;
+                long first = (lastSegment - segments + 1) * KEYFRAMES;
+                assertEquals(first, trajectory.first(), "first frame");
+                assertEquals(FRAMES - 1L, trajectory.last(), "last frame");
+                assertFrames(trajectory, recorded, (int) first);
+                assertThrows(
+                    IllegalArgumentException.class,
+                    () -> trajectory.read(first - 1, new Snapshot(COUNT))
+                );
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Reads the frames backwards and then forwards, so that both new keyframes and single deltas are decoded.
+     */
+    private static void assertFrames(Trajectory trajectory, List<double[][]> recorded, int first) {
+        Snapshot snapshot = new Snapshot(COUNT);
+        for (int frame = FRAMES - 1; frame >= first; frame--) {
+            assertFrame(trajectory, recorded, frame, snapshot);
+        }
+        for (int frame = first; frame < FRAMES; frame++) {
+            assertFrame(trajectory, recorded, frame, snapshot);
+        }
+    }
+
+    private static void assertFrame(Trajectory trajectory, List<double[][]> recorded, int frame, Snapshot snapshot) {
+        trajectory.read(frame, snapshot);
+        assertEquals(frame + 1L, snapshot.step(), "step of frame " + frame);
+        double[][] positions = recorded.get(frame);
+        for (int i = 0; i < COUNT; i++) {
+            double error = Math.max(
+                Math.abs(snapshot.x[i] - positions[0][i]),
+                Math.max(Math.abs(snapshot.y[i] - positions[1][i]), Math.abs(snapshot.z[i] - positions[2][i]))
+            );
+            int body = i;
+            assertTrue(
+                error <= TrajectoryRecorder.QUANTUM,
+                () -> "Frame " + frame + ", body " + body + " off by " + error
+            );
+        }
+    }
+
+    /**
+     * @return The positions of each step recorded
+     */
+    private static List<double[][]> record(Path path, int ringFrames) throws IOException {
+        List<double[][]> recorded = new ArrayList<>();
+        Re[] res = Engine.res(COUNT);
+        try (
+            Engine engine = new Engine(WORLD, res, new Engine.Settings(Gravity.Solver.DIRECT, 0.5d, true, 1));
+            TrajectoryRecorder recorder = new TrajectoryRecorder(path, WORLD, res, KEYFRAMES, ringFrames)
+        ) {
+            engine.scatter(SEED);
+            engine.apply(Preset.get(1));
+            for (int frame = 0; frame < FRAMES; frame++) {
+                engine.step();
+                Bodies bodies = engine.bodies();
+                recorder.record(bodies, engine.steps());
+                recorded.add(new double[][] {bodies.x.clone(), bodies.y.clone(), bodies.z.clone()});
+            }
+        }
+        return recorded;
+    }
+
+    private static final World WORLD = new World(800, 600, 700);
+
+    private static final int COUNT = 60;
+
+    private static final int KEYFRAMES = 8;
+
+    private static final int FRAMES = 100;
+
+    /**
+     * Four segments, so the ring wraps around three times.
+     */
+    private static final int RING_FRAMES = 4 * KEYFRAMES;
+
+    private static final long SEED = 1L;
+}